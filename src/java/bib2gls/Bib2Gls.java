@@ -23,6 +23,11 @@ import java.util.HashMap;
 import java.util.Properties;
 import java.util.Locale;
 import java.util.Set;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.Iterator;
 import java.util.IllformedLocaleException;
 import java.util.Date;
@@ -36,7 +41,13 @@ import java.text.BreakIterator;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.Calendar;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.UnsupportedCharsetException;
@@ -919,6 +930,7 @@ public class Bib2Gls extends BibGlsTeXApp
 
    public void setCreateHyperGroups(boolean flag)
    {
+      addEffect(EFFECT_HYPERGROUPS, ""+flag);
       createHyperGroups = flag;
    }
 
@@ -987,11 +999,27 @@ public class Bib2Gls extends BibGlsTeXApp
 
          String line = null;
 
+         // Only the "Package:" and "File:" lines are of interest,
+         // so test the prefix before trying the regular expressions.
+         // Reading stops when the aux file is input (at the start of
+         // the document environment) as any package information
+         // will have already been written by then.
+
          while ((line = in.readLine()) != null)
          {
-            Matcher m = PATTERN_PACKAGE.matcher(line);
+            Matcher m = null;
+
+            if (line.startsWith("Package: "))
+            {
+               m = PATTERN_PACKAGE.matcher(line);
+
+               if (!m.matches())
+               {
+                  m = null;
+               }
+            }
 
-            if (m.matches())
+            if (m != null)
             {
                String pkg = m.group(1).toLowerCase();
 
@@ -1122,9 +1150,17 @@ public class Bib2Gls extends BibGlsTeXApp
             }
             else
             {
-               m = PATTERN_ENCDEF.matcher(line);
+               if (line.startsWith("File: ") && line.contains("enc.def "))
+               {
+                  m = PATTERN_ENCDEF.matcher(line);
 
-               if (m.matches())
+                  if (!m.matches())
+                  {
+                     m = null;
+                  }
+               }
+
+               if (m != null)
                {
                   if (fontencList == null)
                   {
@@ -1832,9 +1868,20 @@ public class Bib2Gls extends BibGlsTeXApp
 
          listener.putControlSequence(new GenericCommand(csName, null, 
               listener.createString(text)));
+
+         clearInterpreterCache();
       }
    }
 
+   /*
+    * Clears the cache of interpreted values. This needs to be done
+    * whenever the interpreter's definitions change.
+    */
+   public void clearInterpreterCache()
+   {
+      interpretedValueCache.clear();
+   }
+
    /*
     * Process the contents of @preamble to pick up any command
     * definitions. 
@@ -1845,6 +1892,8 @@ public class Bib2Gls extends BibGlsTeXApp
    {
       if (interpreter == null) return;
 
+      clearInterpreterCache();
+
       interpreter.addAll(list.expand(interpreter));
 
       if (isDebuggingOn())
@@ -1876,42 +1925,95 @@ public class Bib2Gls extends BibGlsTeXApp
 
       try
       {
+         // Code that doesn't depend on the current entry and doesn't
+         // change any definitions gives the same result each time.
+         // (The cache isn't used in debug mode so that the debugging
+         // information is written for every conversion.)
+
+         String cacheKey = null;
+         boolean hasAssignment = false;
+
+         if (!isDebuggingOn()
+              && InterpretedValueCache.isCacheable(interpreter, objList))
+         {
+            cacheKey = InterpretedValueCache.getKey(interpreter, objList,
+               trim);
+
+            String result = interpretedValueCache.get(cacheKey);
+
+            if (result != null)
+            {
+               if (logInterpret)
+               {
+                  logMessage("texparserlib: "+texCode+" -> "+result);
+               }
+
+               return result;
+            }
+         }
+         else
+         {
+            hasAssignment = InterpretedValueCache.hasAssignment(
+               interpreter, objList);
+         }
+
          L2HStringConverter listener = 
             (L2HStringConverter)interpreter.getListener();
 
-         StringWriter writer = new StringWriter();
+         StringWriter writer;
+
+         if (interpretDepth == 0 && interpreterWriter != null)
+         {
+            writer = interpreterWriter;
+            writer.getBuffer().setLength(0);
+         }
+         else
+         {
+            writer = new StringWriter();
+
+            if (interpretDepth == 0)
+            {
+               interpreterWriter = writer;
+            }
+         }
+
          listener.setWriter(writer);
 
-         interpreter.addAll(objList);
+         interpretDepth++;
 
-         if (isDebuggingOn())
+         try
          {
-            logAndPrintMessage(String.format(
-              "%n%s%n%s%n%n",
-               getMessage("message.parsing.code"),
-               interpreter.toString(interpreter)));
-         }
+            interpreter.addAll(objList);
+
+            if (isDebuggingOn())
+            {
+               logAndPrintMessage(String.format(
+                 "%n%s%n%s%n%n",
+                  getMessage("message.parsing.code"),
+                  interpreter.toString(interpreter)));
+            }
 
-         while (interpreter.size() > 0)
+            while (interpreter.size() > 0)
+            {
+               TeXObject obj = interpreter.pop();
+               obj.process(interpreter);
+            }
+         }
+         finally
          {
-            TeXObject obj = interpreter.pop();
-            obj.process(interpreter);
+            interpretDepth--;
          }
 
          String result = writer.toString();
 
          if (isDebuggingOn())
          {
-            logAndPrintMessage(String.format("texparserlib:--> %s", result));
+            logAndPrintMessage("texparserlib:--> "+result);
          }
 
          // Strip any html markup
 
-         result = result.replaceAll("<[^>]+>", "");
-
-         result = result.replaceAll("\\&le;", "<");
-         result = result.replaceAll("\\&ge;", ">");
-         result = result.replaceAll("\\&amp;", "&");
+         result = stripHtml(result);
 
          // trim leading/trailing spaces if required
 
@@ -1920,8 +2022,19 @@ public class Bib2Gls extends BibGlsTeXApp
             result = result.trim();
          }
 
-         logMessage(String.format("texparserlib: %s -> %s", 
-            texCode, result));
+         if (logInterpret || isDebuggingOn())
+         {
+            logMessage("texparserlib: "+texCode+" -> "+result);
+         }
+
+         if (cacheKey != null)
+         {
+            interpretedValueCache.put(cacheKey, result);
+         }
+         else if (hasAssignment)
+         {
+            clearInterpreterCache();
+         }
 
          return result;
       }
@@ -1938,6 +2051,97 @@ public class Bib2Gls extends BibGlsTeXApp
       }
    }
 
+   /*
+    * Strips any html markup from the interpreter's output and
+    * converts the &le; &ge; and &amp; entities. Equivalent to
+    * replacing the regular expression "<[^>]+>" with the empty
+    * string, followed by replacing the entities, but without
+    * the overhead of the regular expressions.
+    */
+   private static String stripHtml(String text)
+   {
+      int idx = text.indexOf('<');
+
+      if (idx > -1)
+      {
+         StringBuilder builder = new StringBuilder(text.length());
+         int start = 0;
+
+         while (idx > -1)
+         {
+            int end = text.indexOf('>', idx+2);
+
+            if (end == -1)
+            {
+               break;
+            }
+
+            if (text.charAt(idx+1) == '>')
+            {
+               // "<>" doesn't match
+
+               idx = text.indexOf('<', idx+1);
+               continue;
+            }
+
+            builder.append(text, start, idx);
+            start = end+1;
+            idx = text.indexOf('<', start);
+         }
+
+         builder.append(text, start, text.length());
+         text = builder.toString();
+      }
+
+      idx = text.indexOf('&');
+
+      if (idx == -1)
+      {
+         return text;
+      }
+
+      StringBuilder builder = new StringBuilder(text.length());
+      int start = 0;
+
+      while (idx > -1)
+      {
+         String replacement = null;
+         int len = 0;
+
+         if (text.startsWith("&le;", idx))
+         {
+            replacement = "<";
+            len = 4;
+         }
+         else if (text.startsWith("&ge;", idx))
+         {
+            replacement = ">";
+            len = 4;
+         }
+         else if (text.startsWith("&amp;", idx))
+         {
+            replacement = "&";
+            len = 5;
+         }
+
+         if (replacement == null)
+         {
+            idx = text.indexOf('&', idx+1);
+         }
+         else
+         {
+            builder.append(text, start, idx);
+            builder.append(replacement);
+            start = idx+len;
+            idx = text.indexOf('&', start);
+         }
+      }
+
+      builder.append(text, start, text.length());
+
+      return builder.toString();
+   }
+
    public String interpret(String texCode, BibValueList bibVal, boolean trim)
    {
       if (interpreter == null) return texCode;
@@ -2224,12 +2428,18 @@ public class Bib2Gls extends BibGlsTeXApp
       fields = new Vector<String>();
       fieldMap = new HashMap<String,String>();
       records = new Vector<GlsRecord>();
+      recordLabelMap = new HashMap<String,Vector<GlsRecord>>();
+      recordLocationMatchMap = new HashMap<String,Vector<GlsRecord>>();
+      recordNameRefMatchMap = new HashMap<String,Vector<GlsRecord>>();
       seeRecords = new Vector<GlsSeeRecord>();
-      selectedEntries = new Vector<String>();
+      seeRecordMap = new HashMap<String,GlsSeeRecord>();
+      selectedEntries = new HashSet<String>();
 
       if (saveRecordCount)
       {
-         recordCount = new HashMap<GlsRecord,Integer>();
+         recordCount = new LinkedHashMap<GlsRecord,Integer>();
+         recordCountKeyMap = new HashMap<String,GlsRecord>();
+         recordCountLabelMap = new HashMap<String,Vector<GlsRecord>>();
       }
 
       if (provideknownGlossaries)
@@ -2239,6 +2449,11 @@ public class Bib2Gls extends BibGlsTeXApp
 
       auxData = auxParser.getAuxData();
 
+      if (incremental)
+      {
+         auxFingerprint = computeAuxFingerprint(auxData, parser);
+      }
+
       if (interpret)
       {
          initInterpreter(auxData);
@@ -2481,8 +2696,11 @@ public class Bib2Gls extends BibGlsTeXApp
          }
          else if (name.equals("glsxtr@recordsee"))
          {
-            seeRecords.add(new GlsSeeRecord(
-              data.getArg(0), data.getArg(1), parser));
+            GlsSeeRecord seeRecord = new GlsSeeRecord(
+              data.getArg(0), data.getArg(1), parser);
+
+            seeRecords.add(seeRecord);
+            seeRecordMap.putIfAbsent(seeRecord.getLabel(), seeRecord);
          }
          else if (name.equals("glsxtr@record") 
                    || (useCiteAsRecord && name.equals("citation"))
@@ -2600,38 +2818,37 @@ public class Bib2Gls extends BibGlsTeXApp
 
             // skip duplicates
 
-            boolean found = false;
+            // Find the most recent existing record that matches all
+            // parts except possibly the format. The match indexes
+            // are used so that the entire list of records doesn't
+            // need to be traversed when there are no duplicates.
 
-            // Go backwards through record list.
-            // Any duplicates are likely to be near the end of the
-            // list. If there are no duplicates the entire list will
-            // be traversed. If there is a duplicate the loop can be
-            // terminated more quickly this way.
+            GlsRecord existingRecord = findPartialMatch(newRecord);
 
-            for (int i = records.size()-1; i >= 0; i--)
+            if (existingRecord == null)
             {
-               GlsRecord existingRecord = records.get(i);
+               addRecord(newRecord);
+            }
+            else if (!existingRecord.equals(newRecord))
+            {// partial match (an exact match is skipped)
+               String locKey = existingRecord.getPartialMatchKey();
+               String namerefKey = null;
 
-               if (existingRecord.equals(newRecord))
-               {// exact match, skip
-                  found = true;
-                  break;
-               }
-               else if (existingRecord.partialMatch(newRecord))
+               if (existingRecord instanceof GlsRecordNameRef)
                {
-                  if (!existingRecord.resolveConflict(newRecord))
-                  {
-                     records.add(newRecord);
-                  }
+                  namerefKey = 
+                    ((GlsRecordNameRef)existingRecord).getNameRefMatchKey();
+               }
 
-                  found = true;
-                  break;
+               if (!existingRecord.resolveConflict(newRecord))
+               {
+                  addRecord(newRecord);
                }
-            }
 
-            if (!found)
-            {
-               records.add(newRecord);
+               // the existing record may have been merged with the
+               // new record, in which case its keys may have changed
+
+               updateMatchIndexes(existingRecord, locKey, namerefKey);
             }
          }
          else if (name.equals("@mfu@excls"))
@@ -2790,12 +3007,41 @@ public class Bib2Gls extends BibGlsTeXApp
 
       boolean allowsCrossResourceRefs = true;
 
+      if (incremental && bibFileCache == null)
+      {
+         initBibFileCache();
+      }
+
+      if (incremental && bibFileCache != null)
+      {
+         // The records may be altered while the resource sets are
+         // processed so save their details first.
+
+         recordFingerprints = createRecordFingerprints();
+         unchangedStates = new HashMap<GlsResource,IncrementalResourceState>();
+         newStates = new HashMap<GlsResource,IncrementalResourceState>();
+      }
+
+      boolean parsedConcurrently = false;
+
+      if (jobs > 1 && glsresources.size() > 1)
+      {
+         // Stage 2 for all resources at once (each resource has
+         // its own bib parser)
+
+         parsedConcurrently = parseBibFilesConcurrently();
+      }
+
       for (int i = 0; i < glsresources.size(); i++)
       {
          currentResource = glsresources.get(i);
 
-         // Stage 2: parse all the bib files for this resource 
-         currentResource.parseBibFiles();
+         // Stage 2: parse all the bib files for this resource
+
+         if (!parsedConcurrently)
+         {
+            currentResource.parseBibFiles();
+         }
 
          if (allowsCrossResourceRefs && !forceCrossResourceRefs
               && !currentResource.allowsCrossResourceRefs())
@@ -2806,33 +3052,70 @@ public class Bib2Gls extends BibGlsTeXApp
          }
       }
 
+      if (unchangedStates != null)
+      {
+         findUnchangedResources();
+      }
+
       if (allowsCrossResourceRefs)
       {
          logMessage(getMessage("message.cross-resource.dep.allowed"));
 
-         dependencies = new Vector<String>();
+         dependencies = new LinkedHashSet<String>();
 
          for (int i = 0; i < glsresources.size(); i++)
          {
             currentResource = glsresources.get(i);
 
-            // Stage 3: interpret preamble, process entry fields,
-            // establish dependencies
+            IncrementalResourceState state = getUnchangedState(currentResource);
 
-            currentResource.processBibList();
+            if (state == null)
+            {
+               // Stage 3: interpret preamble, process entry fields,
+               // establish dependencies
+
+               processResourceBibList(currentResource);
+            }
+            else
+            {
+               currentResource.processPreamble();
+               replayEffects(state, EFFECT_STAGE_PROCESS);
+            }
          }
 
          for (int i = 0; i < glsresources.size(); i++)
          {
             currentResource = glsresources.get(i);
 
-            // Stage 4: select required entries, sort and write .glstex
-            // files
+            IncrementalResourceState state = getUnchangedState(currentResource);
 
-            // If 'master' option was used, n will be -1
-            int n = currentResource.processData();
+            if (state != null && !isUnchangedState(currentResource, state))
+            {
+               // Stage 3 was skipped but the selection may now be
+               // different.
 
-            if (n > 0) count += n;
+               state = null;
+               processResourceBibList(currentResource);
+            }
+
+            if (state == null)
+            {
+               // Stage 4: select required entries, sort and write .glstex
+               // files
+
+               // If 'master' option was used, n will be -1
+               int n = processResourceData(currentResource);
+
+               if (n > 0) count += n;
+            }
+            else
+            {
+               replayEffects(state, EFFECT_STAGE_WRITE);
+               count += state.getCount();
+
+               message(getMessage("message.incremental.skipped",
+                 currentResource.getTeXFile()));
+            }
          }
       }
       else
@@ -2844,16 +3127,35 @@ public class Bib2Gls extends BibGlsTeXApp
          {
             currentResource = glsresources.get(i);
 
+            IncrementalResourceState state = getUnchangedState(currentResource);
+
+            if (state != null)
+            {
+               currentResource.processPreamble();
+               replayEffects(state, EFFECT_STAGE_PROCESS);
+
+               if (isUnchangedState(currentResource, state))
+               {
+                  replayEffects(state, EFFECT_STAGE_WRITE);
+                  count += state.getCount();
+
+                  message(getMessage("message.incremental.skipped",
+                    currentResource.getTeXFile()));
+
+                  continue;
+               }
+            }
+
             // Stage 3: interpret preamble, process entry fields,
             // establish dependencies
 
-            currentResource.processBibList();
+            processResourceBibList(currentResource);
 
             // Stage 4: select required entries, sort and write .glstex
             // files
 
             // If 'master' option was used, n will be -1
-            int n = currentResource.processData();
+            int n = processResourceData(currentResource);
 
             if (n > 0) count += n;
          }
@@ -2861,6 +3163,27 @@ public class Bib2Gls extends BibGlsTeXApp
 
       currentResource = null;
 
+      if (bibFileCache != null)
+      {
+         try
+         {
+            if (newStates != null)
+            {
+               saveResourceStates();
+            }
+
+            bibFileCache.write();
+         }
+         catch (IOException e)
+         {
+            // The cache is only an optimisation so carry on
+            // without it.
+
+            warningMessage("warning.cant.write.bib.cache",
+              bibFileCache.getFile(), e.getMessage());
+         }
+      }
+
       if (count == 0 && records.size() == 0)
       {
          error(getMessage("error.missing.records"));
@@ -2872,6 +3195,11 @@ public class Bib2Gls extends BibGlsTeXApp
             "entry", 3, count));
       }
 
+      closeTranscript();
+   }
+
+   private void closeTranscript()
+   {
       if (logWriter != null)
       {
          try
@@ -2887,65 +3215,1005 @@ public class Bib2Gls extends BibGlsTeXApp
       }
    }
 
-   public boolean isRetainFormat(String fmt)
+   /**
+    * Computes the fingerprint of the information in the aux file
+    * that's shared by all resource sets. The resource options and
+    * the records are excluded as they're included in the
+    * fingerprint of each resource set. The label references are
+    * also excluded as they're only used in the record locations.
+    */
+   private String computeAuxFingerprint(Vector<AuxData> auxData,
+     TeXParser parser)
+    throws IOException
    {
-      if (retainFormatList == null) return false;
+      StringBuilder builder = new StringBuilder();
 
-      return retainFormatList.contains(fmt);
+      for (AuxData data : auxData)
+      {
+         String name = data.getName();
+
+         if (name.equals("glsxtr@resource") || name.equals("newlabel")
+            || name.startsWith("glsxtr@record")
+            || name.startsWith("glsxtr@select@entry"))
+         {
+            continue;
+         }
+
+         builder.append(name);
+
+         for (int i = 0; i < data.getNumArgs(); i++)
+         {
+            builder.append('{');
+            builder.append(data.getArg(i).toString(parser));
+            builder.append('}');
+         }
+
+         builder.append('\n');
+      }
+
+      if (auxOptionsFingerprint != null)
+      {
+         builder.append(auxOptionsFingerprint);
+      }
+
+      return BibFileCache.computeDigest(builder.toString());
    }
 
-   public void registerDependencies(Bib2GlsEntry entry)
+   /**
+    * Collects the details of the records and cross-reference
+    * records for each label.
+    */
+   private HashMap<String,StringBuilder> createRecordFingerprints()
    {
-      if (dependencies == null || !entry.hasDependencies()) return;
+      HashMap<String,StringBuilder> map = new HashMap<String,StringBuilder>();
 
-      for (Iterator<String> it = entry.getDependencyIterator();
-           it.hasNext();)
+      for (GlsRecord rec : records)
       {
-         String dep = it.next();
+         String[] labels = rec.getLabels();
 
-         addDependent(dep);
+         StringBuilder builder = new StringBuilder();
+         builder.append(rec.getClass().getSimpleName());
+
+         for (String label : labels)
+         {
+            builder.append('\0');
+            builder.append(label);
+         }
+
+         builder.append(rec.toString());
+         builder.append('\n');
+
+         for (String label : labels)
+         {
+            addRecordFingerprint(map, label, builder);
+         }
       }
-   }
 
-   public void addDependent(String id)
-   {
-      if (!dependencies.contains(id))
+      for (GlsSeeRecord rec : seeRecords)
       {
-         verboseMessage("message.added.dep", id);
-         dependencies.add(id);
+         StringBuilder builder = new StringBuilder();
+         builder.append("see");
+         builder.append('\0');
+         builder.append(rec.getTag());
+
+         for (String xr : rec.getXrLabels())
+         {
+            builder.append('\0');
+            builder.append(xr);
+         }
+
+         builder.append('\n');
+
+         addRecordFingerprint(map, rec.getLabel(), builder);
       }
-   }
 
-   public boolean isDependent(String id)
-   {
-      return dependencies == null ? false : dependencies.contains(id);
+      return map;
    }
 
-   public boolean hasCrossResourceDependencies()
+   private void addRecordFingerprint(HashMap<String,StringBuilder> map,
+     String label, CharSequence text)
    {
-      return dependencies != null;
-   }
+      StringBuilder builder = map.get(label);
 
-   public Iterator<String> getDependencyIterator()
-   {
-      return dependencies == null ? null : dependencies.iterator();
-   }
+      if (builder == null)
+      {
+         builder = new StringBuilder();
+         map.put(label, builder);
+      }
 
-   public boolean isIgnored(GlsRecord rec)
-   {
-      return isIgnoredFormat(rec.getFormat());
+      builder.append(text);
    }
 
-   public boolean isIgnoredFormat(String fmt)
+   private static boolean hasRecordLabel(HashSet<String> labels,
+     String recordLabel, String recordLabelPrefix)
+   {
+      if (recordLabelPrefix != null && !recordLabel.startsWith(recordLabelPrefix))
+      {
+         recordLabel = recordLabelPrefix+recordLabel;
+      }
+
+      return labels.contains(recordLabel);
+   }
+
+   /**
+    * Computes the fingerprint of everything that each resource set
+    * depends on, apart from the information shared with other
+    * resource sets: the bib2gls version, the command line
+    * arguments, the global information from the aux and log files,
+    * the resource options, the bib and supplemental files, and the
+    * records for the given labels. Records that don't match any of
+    * the labels are included in every fingerprint.
+    * @param labelMap the labels with records that may affect each
+    * resource set
+    * @return the fingerprint for each resource set in the map
+    */
+   private HashMap<GlsResource,String> computeInputFingerprints(
+     HashMap<GlsResource,HashSet<String>> labelMap)
+     throws IOException
+   {
+      StringBuilder global = new StringBuilder();
+
+      global.append(VERSION);
+      global.append('\n');
+
+      for (String arg : commandLineArgs)
+      {
+         global.append(arg);
+         global.append('\0');
+      }
+
+      global.append('\n');
+      global.append(auxFingerprint);
+      global.append('\n');
+      global.append(glossariesExtraVersion);
+      global.append('\0');
+      global.append(glossariesVersion);
+      global.append('\0');
+      global.append(mfirstucVersion);
+      global.append('\0');
+      global.append(hyperref);
+      global.append('\0');
+      global.append(fontspec);
+      global.append('\0');
+      global.append(packages);
+      global.append('\0');
+      global.append(fontencList);
+      global.append('\0');
+      global.append(texCharset);
+      global.append('\n');
+
+      for (GlsResource resource : glsresources)
+      {
+         global.append(resource.getTeXFile());
+         global.append('\0');
+      }
+
+      global.append('\n');
+
+      Vector<String> recordLabels
+         = new Vector<String>(recordFingerprints.keySet());
+      Collections.sort(recordLabels);
+
+      StringBuilder unmatched = new StringBuilder();
+
+      for (String label : recordLabels)
+      {
+         boolean found = false;
+
+         for (GlsResource resource : glsresources)
+         {
+            HashSet<String> labels = labelMap.get(resource);
+
+            if (labels != null && hasRecordLabel(labels, label,
+                 resource.getRecordLabelPrefix()))
+            {
+               found = true;
+               break;
+            }
+         }
+
+         if (!found)
+         {
+            unmatched.append(recordFingerprints.get(label));
+         }
+      }
+
+      HashMap<GlsResource,String> fingerprints
+         = new HashMap<GlsResource,String>();
+
+      for (GlsResource resource : glsresources)
+      {
+         HashSet<String> labels = labelMap.get(resource);
+
+         if (labels == null)
+         {
+            continue;
+         }
+
+         StringBuilder builder = new StringBuilder(global);
+
+         builder.append(resource.getResourceOptions());
+         builder.append('\n');
+
+         for (TeXPath src : resource.getSources())
+         {
+            addFileFingerprint(src.getFile(), builder);
+         }
+
+         Vector<TeXPath> supplementalPaths = resource.getSupplementalPaths();
+
+         if (supplementalPaths != null)
+         {
+            for (TeXPath src : supplementalPaths)
+            {
+               addFileFingerprint(src.getFile(), builder);
+            }
+         }
+
+         String recordLabelPrefix = resource.getRecordLabelPrefix();
+
+         for (String label : recordLabels)
+         {
+            if (hasRecordLabel(labels, label, recordLabelPrefix))
+            {
+               builder.append(recordFingerprints.get(label));
+            }
+         }
+
+         builder.append('\n');
+         builder.append(unmatched);
+
+         fingerprints.put(resource,
+           BibFileCache.computeDigest(builder.toString()));
+      }
+
+      return fingerprints;
+   }
+
+   private void addFileFingerprint(File file, StringBuilder builder)
+     throws IOException
+   {
+      builder.append(file);
+      builder.append('\t');
+
+      if (file.exists())
+      {
+         builder.append(bibFileCache.getDigest(file));
+      }
+
+      builder.append('\n');
+   }
+
+   /**
+    * Computes the fingerprint of the information shared with other
+    * resource sets that's used when the given resource set selects
+    * and writes its entries.
+    * @param resource the resource set
+    * @param labels the labels with records that may affect the
+    * resource set
+    * @return the fingerprint
+    */
+   private String computeStateFingerprint(GlsResource resource,
+     HashSet<String> labels)
+    throws IOException
+   {
+      StringBuilder builder = new StringBuilder();
+
+      if (knownGlossaries != null)
+      {
+         appendSorted(builder, knownGlossaries, null);
+      }
+
+      builder.append('\n');
+
+      for (String field : fields)
+      {
+         builder.append(field);
+         builder.append('\0');
+      }
+
+      builder.append('\n');
+
+      if (glsLikeMap != null)
+      {
+         Vector<String> list = new Vector<String>();
+
+         for (GlsLike gl : glsLikeMap.values())
+         {
+            list.add(gl.getPrefix()+"\t"+gl.getName());
+         }
+
+         appendSorted(builder, list, null);
+      }
+
+      builder.append('\n');
+
+      if (mglsRefs != null)
+      {
+         appendSorted(builder, mglsRefs, null);
+      }
+
+      builder.append('\n');
+
+      if (compoundEntries != null)
+      {
+         Vector<String> list = new Vector<String>();
+
+         for (CompoundEntry comp : compoundEntries.values())
+         {
+            list.add(String.format("%s\t%s\t%s\t%s", comp.getLabel(),
+              comp.getMainLabel(), comp.getElementList(), comp.getOptions()));
+         }
+
+         appendSorted(builder, list, null);
+      }
+
+      builder.append('\n');
+      builder.append(createHyperGroups);
+      builder.append('\n');
+
+      // If the duplicate label suffix is used, the entries
+      // selected by other resource sets determine the labels.
+
+      appendSorted(builder, selectedEntries,
+        resource.hasDuplicateLabelSuffix() ? null : labels);
+
+      builder.append('\n');
+
+      if (dependencies != null)
+      {
+         appendSorted(builder, dependencies, labels);
+      }
+
+      return BibFileCache.computeDigest(builder.toString());
+   }
+
+   /**
+    * Appends the elements in the given collection that are in the
+    * given filter (or all elements if the filter is null) in
+    * sorted order.
+    */
+   private static void appendSorted(StringBuilder builder,
+     Collection<String> collection, HashSet<String> filter)
+   {
+      Vector<String> list = new Vector<String>(collection.size());
+
+      for (String value : collection)
+      {
+         if (filter == null || filter.contains(value))
+         {
+            list.add(value);
+         }
+      }
+
+      Collections.sort(list);
+
+      for (String value : list)
+      {
+         builder.append(value);
+         builder.append('\0');
+      }
+   }
+
+   /**
+    * Finds the resource sets that have the same inputs and .glstex
+    * files as at the end of the previous run. These may be skipped
+    * if the shared information they use is also unchanged.
+    */
+   private void findUnchangedResources() throws IOException
+   {
+      HashMap<GlsResource,HashSet<String>> labelMap
+         = new HashMap<GlsResource,HashSet<String>>();
+
+      for (GlsResource resource : glsresources)
+      {
+         if (resource.isMaster())
+         {
+            // The master's .glstex files belong to another document.
+
+            debugMessage("message.incremental.master", resource);
+            continue;
+         }
+
+         IncrementalResourceState state
+            = bibFileCache.getResourceState(resource.getTeXFile());
+
+         if (state == null)
+         {
+            continue;
+         }
+
+         if (!bibFileCache.isUnchangedOutput(resource.getTeXFile()))
+         {
+            verboseMessage("message.incremental.output.changed",
+              resource.getTeXFile());
+            continue;
+         }
+
+         labelMap.put(resource, state.getLabels());
+         unchangedStates.put(resource, state);
+      }
+
+      if (unchangedStates.isEmpty())
+      {
+         return;
+      }
+
+      // If the interpreter searched other resource sets for
+      // entries, none of them can be skipped.
+
+      String search = "\t"+EFFECT_SEARCH+"\t";
+
+      for (IncrementalResourceState state : unchangedStates.values())
+      {
+         for (String effect : state.getEffects())
+         {
+            if (effect.indexOf(search) == 1)
+            {
+               verboseMessage("message.incremental.search");
+               unchangedStates.clear();
+               return;
+            }
+         }
+      }
+
+      HashMap<GlsResource,String> fingerprints
+        = computeInputFingerprints(labelMap);
+
+      for (GlsResource resource : glsresources)
+      {
+         IncrementalResourceState state = unchangedStates.get(resource);
+
+         if (state != null
+              && !fingerprints.get(resource).equals(state.getInputFingerprint()))
+         {
+            verboseMessage("message.incremental.inputs.changed",
+              resource.getTeXFile());
+            unchangedStates.remove(resource);
+         }
+      }
+   }
+
+   private IncrementalResourceState getUnchangedState(GlsResource resource)
+   {
+      return unchangedStates == null ? null : unchangedStates.get(resource);
+   }
+
+   /**
+    * Determines whether or not the shared information used by the
+    * given resource set is the same as in the previous run. If not,
+    * the resource set will have to be processed.
+    */
+   private boolean isUnchangedState(GlsResource resource,
+     IncrementalResourceState state)
+    throws IOException
+   {
+      if (state.getStateFingerprint().equals(
+             computeStateFingerprint(resource, state.getLabels())))
+      {
+         return true;
+      }
+
+      verboseMessage("message.incremental.state.changed",
+        resource.getTeXFile());
+
+      unchangedStates.remove(resource);
+
+      return false;
+   }
+
+   /**
+    * Stage 3 for the given resource set. With --incremental, the
+    * changes the resource set makes to the shared information are
+    * recorded.
+    */
+   private void processResourceBibList(GlsResource resource)
+    throws IOException,Bib2GlsException
+   {
+      if (newStates == null || resource.isMaster())
+      {
+         resource.processBibList();
+         return;
+      }
+
+      IncrementalResourceState state
+         = new IncrementalResourceState(null, null, 0);
+
+      newStates.put(resource, state);
+
+      currentEffects = state.getEffects();
+      effectStage = EFFECT_STAGE_PROCESS;
+
+      try
+      {
+         resource.processBibList();
+      }
+      finally
+      {
+         currentEffects = null;
+      }
+   }
+
+   /**
+    * Stage 4 for the given resource set. With --incremental, the
+    * shared information used by the resource set and the changes it
+    * makes to it are recorded.
+    */
+   private int processResourceData(GlsResource resource)
+    throws IOException,Bib2GlsException
+   {
+      IncrementalResourceState state
+         = (newStates == null ? null : newStates.get(resource));
+
+      if (state == null)
+      {
+         return resource.processData();
+      }
+
+      HashSet<String> labels = resource.getEntryLabels();
+
+      if (labels != null)
+      {
+         state.getLabels().addAll(labels);
+      }
+
+      state.setStateFingerprint(
+        computeStateFingerprint(resource, state.getLabels()));
+
+      currentEffects = state.getEffects();
+      effectStage = EFFECT_STAGE_WRITE;
+
+      int n;
+
+      try
+      {
+         n = resource.processData();
+      }
+      finally
+      {
+         currentEffects = null;
+      }
+
+      state.setCount(n);
+
+      return n;
+   }
+
+   /**
+    * Called when the interpreter searches the other resource sets
+    * for an entry. Resource sets that have been skipped by
+    * --incremental don't have any entries, so the next run mustn't
+    * skip any resource sets.
+    */
+   public void searchingOtherResources()
+   {
+      addEffect(EFFECT_SEARCH, "true");
+
+      if (unchangedStates != null && !unchangedStates.isEmpty()
+            && !otherResourcesSearched)
+      {
+         warningMessage("warning.incremental.search");
+         otherResourcesSearched = true;
+      }
+   }
+
+   private void addEffect(String kind, String value)
+   {
+      if (currentEffects != null)
+      {
+         currentEffects.add(effectStage+"\t"+kind+"\t"+value);
+      }
+   }
+
+   /**
+    * Repeats the changes made to the shared information by a
+    * resource set that's been skipped.
+    */
+   private void replayEffects(IncrementalResourceState state, String stage)
+   {
+      String prefix = stage+"\t";
+
+      for (String effect : state.getEffects())
+      {
+         if (!effect.startsWith(prefix))
+         {
+            continue;
+         }
+
+         String[] split = effect.split("\t", 3);
+
+         if (split.length < 3)
+         {
+            continue;
+         }
+
+         String kind = split[1];
+         String value = split[2];
+
+         if (kind.equals(EFFECT_DEPENDENCY))
+         {
+            if (dependencies != null)
+            {
+               dependencies.add(value);
+            }
+         }
+         else if (kind.equals(EFFECT_SELECTED))
+         {
+            selectedEntry(value);
+         }
+         else if (kind.equals(EFFECT_GLOSSARY))
+         {
+            if (knownGlossaries != null && !knownGlossaries.contains(value))
+            {
+               addGlossary(value);
+            }
+         }
+         else if (kind.equals(EFFECT_FIELD))
+         {
+            addField(value);
+         }
+         else if (kind.equals(EFFECT_GLSLIKE))
+         {
+            String[] args = value.split("\t", 2);
+
+            if (args.length == 2)
+            {
+               addGlsLike(args[0], args[1]);
+            }
+         }
+         else if (kind.equals(EFFECT_MGLSREF))
+         {
+            addMglsRef(value);
+         }
+         else if (kind.equals(EFFECT_HYPERGROUPS))
+         {
+            setCreateHyperGroups(Boolean.parseBoolean(value));
+         }
+      }
+   }
+
+   /**
+    * Saves the information needed to determine whether or not each
+    * resource set can be skipped in the next run.
+    */
+   private void saveResourceStates() throws IOException
+   {
+      if (exitCode != 0 || otherResourcesSearched)
+      {
+         // Don't allow resource sets to be skipped in the next run
+         // if there were any errors or if any entries may have
+         // been missing.
+
+         bibFileCache.clearResourceStates();
+         return;
+      }
+
+      HashMap<GlsResource,HashSet<String>> labelMap
+         = new HashMap<GlsResource,HashSet<String>>();
+      HashMap<GlsResource,IncrementalResourceState> states
+         = new HashMap<GlsResource,IncrementalResourceState>();
+
+      for (GlsResource resource : glsresources)
+      {
+         IncrementalResourceState state = newStates.get(resource);
+
+         if (state == null)
+         {
+            state = unchangedStates.get(resource);
+         }
+
+         if (state != null)
+         {
+            labelMap.put(resource, state.getLabels());
+            states.put(resource, state);
+         }
+      }
+
+      HashMap<GlsResource,String> fingerprints
+        = computeInputFingerprints(labelMap);
+
+      bibFileCache.clearResourceStates();
+
+      for (GlsResource resource : glsresources)
+      {
+         IncrementalResourceState state = states.get(resource);
+
+         if (state != null)
+         {
+            state.setInputFingerprint(fingerprints.get(resource));
+            bibFileCache.setResourceState(resource.getTeXFile(), state);
+         }
+      }
+   }
+
+   public boolean isRetainFormat(String fmt)
+   {
+      if (retainFormatList == null) return false;
+
+      return retainFormatList.contains(fmt);
+   }
+
+   public void registerDependencies(Bib2GlsEntry entry)
+   {
+      if (dependencies == null || !entry.hasDependencies()) return;
+
+      for (Iterator<String> it = entry.getDependencyIterator();
+           it.hasNext();)
+      {
+         String dep = it.next();
+
+         addDependent(dep);
+      }
+   }
+
+   public void addDependent(String id)
+   {
+      addEffect(EFFECT_DEPENDENCY, id);
+
+      if (dependencies.add(id))
+      {
+         verboseMessage("message.added.dep", id);
+      }
+   }
+
+   public boolean isDependent(String id)
+   {
+      return dependencies == null ? false : dependencies.contains(id);
+   }
+
+   public boolean hasCrossResourceDependencies()
+   {
+      return dependencies != null;
+   }
+
+   public Iterator<String> getDependencyIterator()
+   {
+      return dependencies == null ? null : dependencies.iterator();
+   }
+
+   public boolean isIgnored(GlsRecord rec)
+   {
+      return isIgnoredFormat(rec.getFormat());
+   }
+
+   public boolean isIgnoredFormat(String fmt)
    {
       return fmt.equals("glsignore") || fmt.equals("glstriggerrecordformat");
    }
 
+   private void initBibFileCache()
+   {
+      String base = auxFile.getName();
+
+      File file = new File(dirFile,
+         base.substring(0,base.lastIndexOf("."))+BibFileCache.EXTENSION);
+
+      try
+      {
+         file = getWritableFile(file);
+
+         bibFileCache = new BibFileCache(this, file);
+         bibFileCache.read();
+      }
+      catch (IOException e)
+      {
+         warningMessage("warning.cant.read.bib.cache", file, e.getMessage());
+
+         if (bibFileCache != null)
+         {
+            // start afresh
+            bibFileCache = new BibFileCache(this, file);
+         }
+      }
+   }
+
+   public boolean isIncrementalOn()
+   {
+      return incremental;
+   }
+
+   /**
+    * Gets the cache used by --incremental.
+    * @return the cache or null if --incremental isn't used
+    */
+   public BibFileCache getBibFileCache()
+   {
+      return bibFileCache;
+   }
+
+   /*
+    * The byte buffer used by the .glstex writer is kept so that it
+    * can be reused by the next resource set.
+    */
+   public synchronized ByteBuffer takeTeXFileBuffer()
+   {
+      ByteBuffer buffer = texFileBuffer;
+      texFileBuffer = null;
+      return buffer;
+   }
+
+   public synchronized void releaseTeXFileBuffer(ByteBuffer buffer)
+   {
+      texFileBuffer = buffer;
+   }
+
    public GlsResource getCurrentResource()
    {
+      if (jobResource != null)
+      {
+         GlsResource resource = jobResource.get();
+
+         if (resource != null)
+         {
+            return resource;
+         }
+      }
+
       return currentResource;
    }
 
+   /**
+    * Parses the bib files for all resource sets using a pool of
+    * up to {@link #jobs} threads (stage 2). Each resource set has
+    * its own bib parser, so this stage can be run independently
+    * for each resource. Stages 3 and 4 aren't affected as they
+    * share the interpreter and may have cross-resource
+    * dependencies. The transcript messages for each resource set
+    * are buffered and written in the order of the resource sets.
+    * @return true if the bib files were parsed or false if they
+    * need to be parsed sequentially
+    * @throws IOException if any of the resource sets failed
+    */
+   private boolean parseBibFilesConcurrently()
+    throws IOException
+   {
+      int numResources = glsresources.size();
+
+      for (GlsResource resource : glsresources)
+      {
+         // The definition index is a running total across all
+         // resource sets so it depends on the parsing order.
+
+         if (resource.getDefinitionIndexField() != null)
+         {
+            verboseMessage("message.jobs.sequential.definition.index",
+              resource);
+            return false;
+         }
+      }
+
+      int poolSize = Math.min(jobs, numResources);
+
+      verboseMessage("message.parsing.concurrently", numResources, poolSize);
+
+      Vector<BibParseJob> parseJobs = new Vector<BibParseJob>(numResources);
+      Vector<Future<GlsResource>> results
+        = new Vector<Future<GlsResource>>(numResources);
+
+      jobResource = new ThreadLocal<GlsResource>();
+      jobLogWriter = new ThreadLocal<PrintWriter>();
+
+      ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+
+      try
+      {
+         for (GlsResource resource : glsresources)
+         {
+            BibParseJob job = new BibParseJob(resource);
+            parseJobs.add(job);
+            results.add(executor.submit(job));
+         }
+
+         for (int i = 0; i < numResources; i++)
+         {
+            try
+            {
+               results.get(i).get();
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+               throw new IOException(e);
+            }
+            catch (ExecutionException e)
+            {
+               Throwable cause = e.getCause();
+
+               if (cause instanceof IOException)
+               {
+                  throw (IOException)cause;
+               }
+               else if (cause instanceof RuntimeException)
+               {
+                  throw (RuntimeException)cause;
+               }
+               else if (cause instanceof Error)
+               {
+                  throw (Error)cause;
+               }
+
+               throw new IOException(cause);
+            }
+            finally
+            {
+               logMessageNoLn(parseJobs.get(i).getTranscript());
+            }
+
+            glsresources.get(i).flushPendingCompoundEntries();
+         }
+      }
+      finally
+      {
+         executor.shutdownNow();
+
+         jobResource = null;
+         jobLogWriter = null;
+      }
+
+      return true;
+   }
+
+   private PrintWriter getJobLogWriter()
+   {
+      return jobLogWriter == null ? null : jobLogWriter.get();
+   }
+
+   /**
+    * Stage 2 for a single resource set when parsing concurrently.
+    */
+   private class BibParseJob implements Callable<GlsResource>
+   {
+      public BibParseJob(GlsResource resource)
+      {
+         this.resource = resource;
+         transcript = new StringWriter();
+      }
+
+      @Override
+      public GlsResource call() throws IOException
+      {
+         jobResource.set(resource);
+
+         PrintWriter writer = new PrintWriter(transcript);
+         jobLogWriter.set(writer);
+
+         try
+         {
+            resource.parseBibFiles();
+         }
+         finally
+         {
+            writer.flush();
+            jobLogWriter.remove();
+            jobResource.remove();
+         }
+
+         return resource;
+      }
+
+      public String getTranscript()
+      {
+         return transcript.toString();
+      }
+
+      private GlsResource resource;
+      private StringWriter transcript;
+   }
+
+   public boolean isParsingConcurrently()
+   {
+      return jobResource != null;
+   }
+
+   /**
+    * Gets the maximum number of threads that may be used (as set
+    * by --jobs).
+    */
+   public int getJobs()
+   {
+      return jobs;
+   }
+
    public boolean isLastResource(GlsResource resource)
    {
       return glsresources == null ? false : 
@@ -3027,6 +4295,8 @@ public class Bib2Gls extends BibGlsTeXApp
          glsLikeMap = new HashMap<String,GlsLike>();
       }
 
+      addEffect(EFFECT_GLSLIKE, prefix+"\t"+csname);
+
       GlsLike gl = new GlsLike(prefix, csname);
 
       glsLikeMap.put(csname, gl);
@@ -3508,6 +4778,8 @@ public class Bib2Gls extends BibGlsTeXApp
 
    public void addMglsRef(String labels)
    {
+      addEffect(EFFECT_MGLSREF, labels);
+
       if (mglsRefs == null)
       {
          mglsRefs = new Vector<String>();
@@ -3670,6 +4942,8 @@ public class Bib2Gls extends BibGlsTeXApp
 
    public void addField(String fieldName)
    {
+      addEffect(EFFECT_FIELD, fieldName);
+
       if (!fields.contains(fieldName))
       {
          fields.add(fieldName);
@@ -3822,75 +5096,263 @@ public class Bib2Gls extends BibGlsTeXApp
          }
       }
 
-      for (String spField : OTHER_SPECIAL_FIELDS)
+      for (String spField : OTHER_SPECIAL_FIELDS)
+      {
+         if (spField.equals(field))
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   public boolean isCheckNonBibFieldsOn()
+   {
+      return checkNonBibFields;
+   }
+
+   public boolean isWarnUnknownEntryTypesOn()
+   {
+      return warnUnknownEntryTypes;
+   }
+
+   public boolean isProvideGlossariesOn()
+   {
+      return knownGlossaries != null;
+   }
+
+   public boolean isKnownGlossary(String label)
+   {
+      return knownGlossaries != null && knownGlossaries.contains(label);
+   }
+
+   // avoiding duplicate checks (only use once already checked isProvideGlossariesOn and
+   // isKnownGlossary)
+   public void addGlossary(String label)
+   {
+      addEffect(EFFECT_GLOSSARY, label);
+      knownGlossaries.add(label);
+   }
+
+   public void selectedEntry(String label)
+   {
+      addEffect(EFFECT_SELECTED, label);
+      selectedEntries.add(label);
+   }
+
+   public boolean isEntrySelected(String label)
+   {
+      return selectedEntries.contains(label);
+   }
+
+   public boolean anyEntriesSelected()
+   {
+      return !selectedEntries.isEmpty();
+   }
+
+   public GlsSeeRecord getSeeRecord(String label)
+   {
+      return seeRecordMap.get(label);
+   }
+
+   public Vector<GlsRecord> getRecords()
+   {
+      return records;
+   }
+
+   /*
+    * Adds a record to the list of records and to the index of
+    * records by label.
+    */
+   private void addRecord(GlsRecord rec)
+   {
+      records.add(rec);
+      addToMatchIndexes(rec);
+
+      for (String label : rec.getLabels())
+      {
+         Vector<GlsRecord> list = recordLabelMap.get(label);
+
+         if (list == null)
+         {
+            list = new Vector<GlsRecord>();
+            recordLabelMap.put(label, list);
+         }
+         else if (list.lastElement() == rec)
+         {
+            // label repeated in selection list
+            continue;
+         }
+
+         list.add(rec);
+      }
+   }
+
+   /*
+    * Adds the record to the indexes used to find partial matches
+    * when checking for duplicates. 
+    */
+   private void addToMatchIndexes(GlsRecord rec)
+   {
+      addToMatchIndex(recordLocationMatchMap, rec.getPartialMatchKey(), rec);
+
+      if (rec instanceof GlsRecordNameRef)
+      {
+         addToMatchIndex(recordNameRefMatchMap, 
+           ((GlsRecordNameRef)rec).getNameRefMatchKey(), rec);
+      }
+   }
+
+   /*
+    * Re-indexes an existing record if its keys have changed. Stale
+    * entries are left in the old lists as every candidate
+    * is checked with partialMatch.
+    */
+   private void updateMatchIndexes(GlsRecord rec, String oldLocKey,
+     String oldNameRefKey)
+   {
+      String key = rec.getPartialMatchKey();
+
+      if (!key.equals(oldLocKey))
+      {
+         addToMatchIndex(recordLocationMatchMap, key, rec);
+      }
+
+      if (rec instanceof GlsRecordNameRef)
       {
-         if (spField.equals(field))
+         key = ((GlsRecordNameRef)rec).getNameRefMatchKey();
+
+         if (!key.equals(oldNameRefKey))
          {
-            return true;
+            addToMatchIndex(recordNameRefMatchMap, key, rec);
          }
       }
-
-      return false;
    }
 
-   public boolean isCheckNonBibFieldsOn()
+   private void addToMatchIndex(HashMap<String,Vector<GlsRecord>> map,
+     String key, GlsRecord rec)
    {
-      return checkNonBibFields;
-   }
+      Vector<GlsRecord> list = map.get(key);
 
-   public boolean isWarnUnknownEntryTypesOn()
-   {
-      return warnUnknownEntryTypes;
-   }
+      if (list == null)
+      {
+         list = new Vector<GlsRecord>();
+         map.put(key, list);
+      }
 
-   public boolean isProvideGlossariesOn()
-   {
-      return knownGlossaries != null;
+      list.add(rec);
    }
 
-   public boolean isKnownGlossary(String label)
+   /*
+    * Finds the most recent existing record that partially matches
+    * the given record or null if there's no match. Only the
+    * records with the same partial match key can match (or, for
+    * nameref records, the same nameref key) so the rest of the
+    * record list doesn't need to be checked.
+    */
+   private GlsRecord findPartialMatch(GlsRecord newRecord)
    {
-      return knownGlossaries != null && knownGlossaries.contains(label);
-   }
+      GlsRecord match = findPartialMatch(
+         recordLocationMatchMap.get(newRecord.getPartialMatchKey()),
+         newRecord, null);
 
-   // avoiding duplicate checks (only use once already checked isProvideGlossariesOn and
-   // isKnownGlossary)
-   public void addGlossary(String label)
-   {
-      knownGlossaries.add(label);
-   }
+      if (newRecord instanceof GlsRecordNameRef)
+      {
+         match = findPartialMatch(recordNameRefMatchMap.get(
+           ((GlsRecordNameRef)newRecord).getNameRefMatchKey()),
+           newRecord, match);
+      }
 
-   public void selectedEntry(String label)
-   {
-      selectedEntries.add(label);
+      return match;
    }
 
-   public boolean isEntrySelected(String label)
+   private GlsRecord findPartialMatch(Vector<GlsRecord> candidates,
+     GlsRecord newRecord, GlsRecord match)
    {
-      return selectedEntries.contains(label);
+      if (candidates == null) return match;
+
+      for (int i = candidates.size()-1; i >= 0; i--)
+      {
+         GlsRecord rec = candidates.get(i);
+
+         if (match != null && rec.getIndex() <= match.getIndex())
+         {
+            continue;
+         }
+
+         if (rec.partialMatch(newRecord))
+         {
+            match = rec;
+         }
+      }
+
+      return match;
    }
 
-   public boolean anyEntriesSelected()
+   /*
+    * Gets the list of records (in order of occurrence) that have
+    * the given label (without the record label prefix), or null
+    * if there are none.
+    */
+   public Vector<GlsRecord> getRecordsWithLabel(String label)
    {
-      return !selectedEntries.isEmpty();
+      return recordLabelMap == null ? null : recordLabelMap.get(label);
    }
 
-   public GlsSeeRecord getSeeRecord(String label)
+   /*
+    * Adds to the given collection all records that match the given
+    * entry label once the record label prefix has been applied.
+    * This uses the label index so it's not necessary to iterate
+    * over all records.
+    */
+   public void addRecordsMatchingLabel(String entryLabel,
+     String recordLabelPrefix, Collection<GlsRecord> matches)
    {
-      for (GlsSeeRecord rec: seeRecords)
+      if (entryLabel == null || recordLabelMap == null) return;
+
+      Vector<GlsRecord> list;
+
+      if (recordLabelPrefix == null)
       {
-         if (rec.getLabel().equals(label))
+         list = recordLabelMap.get(entryLabel);
+
+         if (list != null)
          {
-            return rec;
+            matches.addAll(list);
          }
+
+         return;
       }
 
-      return null;
-   }
+      if (!entryLabel.startsWith(recordLabelPrefix))
+      {
+         // no record label can match once the prefix is applied
+         return;
+      }
 
-   public Vector<GlsRecord> getRecords()
-   {
-      return records;
+      // record labels that already start with the prefix
+
+      list = recordLabelMap.get(entryLabel);
+
+      if (list != null)
+      {
+         matches.addAll(list);
+      }
+
+      // record labels that don't start with the prefix
+
+      String label = entryLabel.substring(recordLabelPrefix.length());
+
+      if (!label.startsWith(recordLabelPrefix))
+      {
+         list = recordLabelMap.get(label);
+
+         if (list != null)
+         {
+            matches.addAll(list);
+         }
+      }
    }
 
    public Vector<GlsSeeRecord> getSeeRecords()
@@ -3900,11 +5362,19 @@ public class Bib2Gls extends BibGlsTeXApp
 
    public boolean hasRecord(String id)
    {
-      for (GlsRecord rec: records)
+      Vector<GlsRecord> list = getRecordsWithLabel(id);
+
+      if (list != null)
       {
-         if (id.equals(rec.getLabel()))
+         // the label index includes all labels in selection
+         // records but only the first label is considered here
+
+         for (GlsRecord rec : list)
          {
-            return true;
+            if (id.equals(rec.getLabel()))
+            {
+               return true;
+            }
          }
       }
 
@@ -3913,42 +5383,40 @@ public class Bib2Gls extends BibGlsTeXApp
 
    public boolean hasSeeRecord(String id)
    {
-      for (GlsSeeRecord rec: seeRecords)
-      {
-         if (id.equals(rec.getLabel()))
-         {
-            return true;
-         }
-      }
-
-      return false;
+      return seeRecordMap.containsKey(id);
    }
 
    public GlsRecord getRecordCountKey(GlsRecord rec)
    {
       if (recordCount == null) return null;
 
-      Set<GlsRecord> keys = recordCount.keySet();
+      return recordCountKeyMap.get(getRecordCountKeyString(rec));
+   }
 
-      for (Iterator<GlsRecord> it = keys.iterator(); it.hasNext(); )
-      {
-         GlsRecord key = it.next();
+   /*
+    * Gets the composite key (label, counter and, if
+    * --record-count-unit is on, location) used to look up the
+    * record count key.
+    */
+   private String getRecordCountKeyString(GlsRecord rec)
+   {
+      String label = rec.getLabel();
+      String counter = rec.getCounter();
 
-         boolean match = key.getLabel().equals(rec.getLabel())
-          && key.getCounter().equals(rec.getCounter());
+      StringBuilder builder = new StringBuilder(
+        label.length()+counter.length()+1);
 
-         if (saveRecordCountUnit)
-         {
-            match = match && key.getLocation().equals(rec.getLocation());
-         }
+      builder.append(label);
+      builder.append('\0');
+      builder.append(counter);
 
-         if (match)
-         {
-            return key;
-         }
+      if (saveRecordCountUnit)
+      {
+         builder.append('\0');
+         builder.append(rec.getLocation());
       }
 
-      return null;
+      return builder.toString();
    }
 
    public boolean isRecordCountSet()
@@ -3966,20 +5434,39 @@ public class Bib2Gls extends BibGlsTeXApp
       return recordCount == null ? null : recordCount.get(key);
    }
 
-   public void writeRecordCount(String entryLabel, PrintWriter writer)
-    throws IOException
+   /*
+    * Gets the total record count for the given entry label.
+    */
+   public int getRecordCountTotal(String entryLabel)
    {
-      Set<GlsRecord> keys = getRecordCountKeySet();
+      if (recordCount == null) return 0;
+
+      Vector<GlsRecord> keys = recordCountLabelMap.get(entryLabel);
 
-      if (keys == null) return;
+      if (keys == null) return 0;
 
       int total = 0;
 
-      for (Iterator<GlsRecord> it = keys.iterator(); it.hasNext(); )
+      for (GlsRecord rec : keys)
       {
-         GlsRecord rec = it.next();
+         total += recordCount.get(rec).intValue();
+      }
+
+      return total;
+   }
+
+   public void writeRecordCount(String entryLabel, PrintWriter writer)
+    throws IOException
+   {
+      if (recordCount == null) return;
 
-         if (rec.getLabel().equals(entryLabel))
+      int total = 0;
+
+      Vector<GlsRecord> keys = recordCountLabelMap.get(entryLabel);
+
+      if (keys != null)
+      {
+         for (GlsRecord rec : keys)
          {
             Integer count = getRecordCount(rec);
             total += count;
@@ -4244,13 +5731,25 @@ public class Bib2Gls extends BibGlsTeXApp
    {
       if (recordCount == null) return;
 
-      GlsRecord key = getRecordCountKey(rec);
+      String keyString = getRecordCountKeyString(rec);
+      GlsRecord key = recordCountKeyMap.get(keyString);
 
       if (recordCountRule.isAllowed(rec))
       {
          if (key == null)
          {
             recordCount.put(rec, Integer.valueOf(1));
+            recordCountKeyMap.put(keyString, rec);
+
+            Vector<GlsRecord> keys = recordCountLabelMap.get(rec.getLabel());
+
+            if (keys == null)
+            {
+               keys = new Vector<GlsRecord>();
+               recordCountLabelMap.put(rec.getLabel(), keys);
+            }
+
+            keys.add(rec);
          }
          else
          {
@@ -4360,10 +5859,23 @@ public class Bib2Gls extends BibGlsTeXApp
       }
    }
 
+   @Override
+   public boolean isTranscriptOn()
+   {
+      return logWriter != null || pendingWriter != null
+       || getJobLogWriter() != null;
+   }
+
    @Override
    public void logMessageNoLn(String message)
    {
-      if (logWriter != null)
+      PrintWriter jobWriter = getJobLogWriter();
+
+      if (jobWriter != null)
+      {
+         jobWriter.print(message);
+      }
+      else if (logWriter != null)
       {
          logWriter.print(message);
       }
@@ -4376,7 +5888,13 @@ public class Bib2Gls extends BibGlsTeXApp
    @Override
    public void logMessage(String message)
    {
-      if (logWriter != null)
+      PrintWriter jobWriter = getJobLogWriter();
+
+      if (jobWriter != null)
+      {
+         jobWriter.println(message);
+      }
+      else if (logWriter != null)
       {
          logWriter.println(message);
       }
@@ -4389,7 +5907,13 @@ public class Bib2Gls extends BibGlsTeXApp
    @Override
    public void logMessage()
    {
-      if (logWriter != null)
+      PrintWriter jobWriter = getJobLogWriter();
+
+      if (jobWriter != null)
+      {
+         jobWriter.println();
+      }
+      else if (logWriter != null)
       {
          logWriter.println();
       }
@@ -4534,16 +6058,62 @@ public class Bib2Gls extends BibGlsTeXApp
          return result;
       }
 
+      if (useKpathseaIndex)
+      {
+         result = kpathseaLookup(arg);
+
+         if (result != null)
+         {
+            if (result.isEmpty())
+            {
+               return null;
+            }
+
+            kpsewhichResults.put(arg, result);
+
+            return result;
+         }
+      }
+
+      Vector<String> lines = runKpsewhich(arg);
+
+      String line = (lines == null || lines.isEmpty() ? null : lines.get(0));
+
+      if (lines != null)
+      {
+         kpsewhichResults.put(arg, line);
+      }
+
+      return line;
+   }
+
+   /*
+    * Runs kpsewhich with the given arguments and returns the lines
+    * it writes to STDOUT, or null if it couldn't be run or failed.
+    */
+   private Vector<String> runKpsewhich(String... args)
+     throws IOException,InterruptedException
+   {
+      StringBuilder cmdLine = new StringBuilder("kpsewhich");
+
+      for (String arg : args)
+      {
+         cmdLine.append(String.format(" '%s'", arg));
+      }
+
       debug(getMessageWithFallback("message.running", 
-        "Running {0}",
-        String.format("kpsewhich '%s'", arg)));
+        "Running {0}", cmdLine));
+
+      String[] cmd = new String[args.length+1];
+      cmd[0] = "kpsewhich";
+      System.arraycopy(args, 0, cmd, 1, args.length);
 
       Process process = null;
       int exitCode = -1;
 
       try
       {
-         process = new ProcessBuilder("kpsewhich", arg).start();
+         process = new ProcessBuilder(cmd).start();
          exitCode = process.waitFor();
       }
       catch (Exception e)
@@ -4552,7 +6122,7 @@ public class Bib2Gls extends BibGlsTeXApp
          return null;
       }
 
-      String line = null;
+      Vector<String> lines = new Vector<String>();
 
       if (exitCode == 0)
       {
@@ -4563,7 +6133,7 @@ public class Bib2Gls extends BibGlsTeXApp
             throw new IOException(
              getMessageWithFallback("error.cant.open.process.stream", 
              "Unable to open input stream from process: {0}",
-             String.format("kpsewhich '%s'", arg)));
+             cmdLine));
          }
 
          BufferedReader reader = null;
@@ -4572,10 +6142,15 @@ public class Bib2Gls extends BibGlsTeXApp
          {
             reader = new BufferedReader(new InputStreamReader(stream));
 
-            line = reader.readLine();
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+               debug(getMessageWithFallback("message.process.result",
+                     "Processed returned: {0}", line));
 
-            debug(getMessageWithFallback("message.process.result",
-                  "Processed returned: {0}", line));
+               lines.add(line);
+            }
          }
          finally
          {
@@ -4589,12 +6164,62 @@ public class Bib2Gls extends BibGlsTeXApp
       {
          logAndPrintMessage(getMessageWithFallback("error.app_failed",
            "{0} failed with exit code {1}",
-           String.format("kpsewhich '%s'", arg),  exitCode));
+           cmdLine, exitCode));
       }
 
-      kpsewhichResults.put(arg, line);
+      return lines;
+   }
 
-      return line;
+   /*
+    * Looks up a bib file in the kpathsea index. Returns null if
+    * kpsewhich needs to be run (including for any variable
+    * lookups), or an empty string if the file can't be found.
+    */
+   private String kpathseaLookup(String arg)
+     throws IOException,InterruptedException
+   {
+      if (arg.startsWith("-"))
+      {
+         return null;
+      }
+
+      if (kpathseaIndex == null)
+      {
+         // kpathsea provides the search paths (taking texmf.cnf,
+         // the environment and its compiled-in defaults into
+         // account). kpsewhich writes the result of --expand-path
+         // before the result of --show-path.
+
+         Vector<String> lines = runKpsewhich("--expand-path=$TEXMFDBS",
+            "--show-path=bib");
+
+         if (lines == null || lines.size() != 2)
+         {
+            debugMessage("message.kpathsea.no.index");
+            useKpathseaIndex = false;
+
+            return null;
+         }
+
+         kpathseaIndex = new KpathseaIndex(this, lines.get(0), lines.get(1));
+      }
+
+      if (incremental && bibFileCache == null && auxFile != null)
+      {
+         // the index of the ls-R databases may have been saved by
+         // the previous run
+
+         initBibFileCache();
+      }
+
+      String result = kpathseaIndex.findBibFile(arg);
+
+      if (result == null)
+      {
+         debugMessage("message.kpathsea.indeterminate", arg);
+      }
+
+      return result;
    }
 
    public TeXPath getBibFilePath(TeXParser parser, String filename)
@@ -4981,6 +6606,9 @@ public class Bib2Gls extends BibGlsTeXApp
       printSyntaxItem(getMessage("syntax.list.known.packages", 
         "--list-known-packages"));
 
+      printSyntaxItem(getMessage("syntax.log.interpret",
+        "--[no-]log-interpret"));
+
       printSyntaxItem(getMessage("syntax.packages", "--packages", "-p"));
 
       printSyntaxItem(getMessage("syntax.support.unicode.script",
@@ -5066,6 +6694,13 @@ public class Bib2Gls extends BibGlsTeXApp
       printSyntaxItem(getMessage("syntax.force.cross.resource.refs",
          "--[no-]force-cross-resource-refs", "-x"));
 
+      printSyntaxItem(getMessage("syntax.kpathsea.index",
+         "--[no-]kpathsea-index"));
+
+      printSyntaxItem(getMessage("syntax.incremental", "--[no-]incremental"));
+
+      printSyntaxItem(getMessage("syntax.jobs", "--jobs"));
+
       printSyntaxItem(getMessage("syntax.locale", "--locale", "-l"));
 
       printSyntaxItem(getMessage("syntax.provide.glossaries",
@@ -5279,6 +6914,7 @@ public class Bib2Gls extends BibGlsTeXApp
         || arg.equals("--trim-only-fields")
         || arg.equals("--trim-except-fields")
         || arg.equals("--aux-input-action")
+        || arg.equals("--jobs")
          )
       {
          return 1;
@@ -5296,6 +6932,26 @@ public class Bib2Gls extends BibGlsTeXApp
       {
          String key = it.next();
 
+         if (incremental)
+         {
+            if (auxOptionsFingerprint == null)
+            {
+               auxOptionsFingerprint = new StringBuilder();
+            }
+
+            TeXObject obj = options.getValue(key);
+
+            auxOptionsFingerprint.append(key);
+            auxOptionsFingerprint.append('=');
+
+            if (obj != null)
+            {
+               auxOptionsFingerprint.append(obj.toString(parser));
+            }
+
+            auxOptionsFingerprint.append('\0');
+         }
+
          if (key.equals("log-file")
            || key.equals("ignore-packages")
            || key.equals("list-known-packages")
@@ -6330,6 +7986,14 @@ public class Bib2Gls extends BibGlsTeXApp
       {
          interpret = false;
       }
+      else if (arg.equals("--log-interpret"))
+      {
+         logInterpret = true;
+      }
+      else if (arg.equals("--no-log-interpret"))
+      {
+         logInterpret = false;
+      }
       else if (arg.equals("--break-space"))
       {
          useNonBreakSpace = false;
@@ -6403,6 +8067,40 @@ public class Bib2Gls extends BibGlsTeXApp
       {
          forceCrossResourceRefs = false;
       }
+      else if (arg.equals("--kpathsea-index"))
+      {
+         useKpathseaIndex = true;
+      }
+      else if (arg.equals("--no-kpathsea-index"))
+      {
+         useKpathseaIndex = false;
+      }
+      else if (arg.equals("--incremental"))
+      {
+         incremental = true;
+      }
+      else if (arg.equals("--no-incremental"))
+      {
+         incremental = false;
+      }
+      else if (isIntArg(deque, arg, "--jobs", returnVals))
+      {
+         if (returnVals[0] == null)
+         {
+            throw new Bib2GlsSyntaxException(
+               getMessage("error.missing.value", arg));
+         }
+
+         int n = returnVals[0].intValue();
+
+         if (n < 1)
+         {
+            throw new Bib2GlsSyntaxException(
+               getMessage("error.invalid.opt.minint.value", arg, n, 1));
+         }
+
+         jobs = n;
+      }
       else if (arg.equals("--support-unicode-script"))
       {
          supportUnicodeSubSuperScripts = true;
@@ -6874,6 +8572,8 @@ public class Bib2Gls extends BibGlsTeXApp
 
    protected void run(String[] args)
    {
+      commandLineArgs = args;
+
       try
       {
          initialise(args);
@@ -6940,8 +8640,12 @@ public class Bib2Gls extends BibGlsTeXApp
    private Vector<GlsResource> glsresources;
    private Vector<String> fields;
    private Vector<GlsRecord> records;
+   private HashMap<String,Vector<GlsRecord>> recordLabelMap;
+   private HashMap<String,Vector<GlsRecord>> recordLocationMatchMap;
+   private HashMap<String,Vector<GlsRecord>> recordNameRefMatchMap;
    private Vector<GlsSeeRecord> seeRecords;
-   private Vector<String> selectedEntries;
+   private HashMap<String,GlsSeeRecord> seeRecordMap;
+   private HashSet<String> selectedEntries;
 
    private Vector<String> knownGlossaries=null;
 
@@ -7028,6 +8732,8 @@ public class Bib2Gls extends BibGlsTeXApp
    private HashMap<String,String> formatMap;
 
    private HashMap<GlsRecord,Integer> recordCount=null;
+   private HashMap<String,GlsRecord> recordCountKeyMap=null;
+   private HashMap<String,Vector<GlsRecord>> recordCountLabelMap=null;
 
    private Vector<File> texFiles;
 
@@ -7063,6 +8769,45 @@ public class Bib2Gls extends BibGlsTeXApp
 
    private GlsResource currentResource = null;
 
+   // maximum number of resource sets to parse at the same time
+   private int jobs = 1;
+
+   private boolean useKpathseaIndex = false;
+   private KpathseaIndex kpathseaIndex = null;
+
+   private boolean incremental = false;
+   private BibFileCache bibFileCache = null;
+
+   private String auxFingerprint = null;
+   private StringBuilder auxOptionsFingerprint = null;
+   private HashMap<String,StringBuilder> recordFingerprints = null;
+   private HashMap<GlsResource,IncrementalResourceState> unchangedStates = null;
+   private HashMap<GlsResource,IncrementalResourceState> newStates = null;
+   private Vector<String> currentEffects = null;
+   private String effectStage = null;
+
+   private static final String EFFECT_STAGE_PROCESS = "3";
+   private static final String EFFECT_STAGE_WRITE = "4";
+
+   private static final String EFFECT_DEPENDENCY = "dep";
+   private static final String EFFECT_SELECTED = "select";
+   private static final String EFFECT_GLOSSARY = "glossary";
+   private static final String EFFECT_FIELD = "field";
+   private static final String EFFECT_GLSLIKE = "glslike";
+   private static final String EFFECT_MGLSREF = "mglsref";
+   private static final String EFFECT_HYPERGROUPS = "hypergroups";
+   private static final String EFFECT_SEARCH = "search";
+
+   private boolean otherResourcesSearched = false;
+
+   private ByteBuffer texFileBuffer = null;
+
+   private String[] commandLineArgs = new String[0];
+
+   // only set while the bib files are being parsed concurrently
+   private ThreadLocal<GlsResource> jobResource = null;
+   private ThreadLocal<PrintWriter> jobLogWriter = null;
+
    private boolean trimFields = false;
 
    private Vector<String> trimOnlyFields = null, trimExceptFields = null;
@@ -7075,6 +8820,15 @@ public class Bib2Gls extends BibGlsTeXApp
 
    private boolean interpret = true;
 
+   private boolean logInterpret = true;
+
+   private InterpretedValueCache interpretedValueCache
+     = new InterpretedValueCache();
+
+   // reused by interpret() unless it's called recursively
+   private StringWriter interpreterWriter = null;
+   private int interpretDepth = 0;
+
    private Vector<String> packages = null, ignorePackages=null,
       customPackages = null;
 
@@ -7165,7 +8919,7 @@ public class Bib2Gls extends BibGlsTeXApp
    private Vector<String> mfirstucBlockers;
    private HashMap<String,String> mfirstucMappings;
 
-   private Vector<String> dependencies = null;
+   private LinkedHashSet<String> dependencies = null;
 
    private HashMap<String,String> kpsewhichResults;
 
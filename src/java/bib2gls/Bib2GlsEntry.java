@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.Set;
 import java.util.Iterator;
 import java.util.Vector;
+import java.util.LinkedHashSet;
 import java.util.Locale;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
@@ -53,7 +54,13 @@ public class Bib2GlsEntry extends BibEntry
 
    public Bib2GlsEntry(Bib2Gls bib2gls, String entryType)
    {
-      this(bib2gls, entryType, defIndexCount++);
+      this(bib2gls, entryType, nextDefinitionIndex());
+   }
+
+   // Entries may be created by more than one thread (see --jobs)
+   private static synchronized long nextDefinitionIndex()
+   {
+      return defIndexCount++;
    }
    
    private Bib2GlsEntry(Bib2Gls bib2gls, String entryType, long defIndex)
@@ -68,13 +75,13 @@ public class Bib2GlsEntry extends BibEntry
       labelPrefix = resource.getLabelPrefix();
 
       fieldValues = new HashMap<String,String>();
-      deps = new Vector<String>();
+      deps = new LinkedHashSet<String>();
 
       String[] counters = resource.getLocationCounters();
 
       if (counters == null)
       {
-         records = new Vector<GlsRecord>();
+         records = new GlsRecordList();
       }
       else
       {
@@ -82,7 +89,7 @@ public class Bib2GlsEntry extends BibEntry
 
          for (String counter : counters)
          {
-            recordMap.put(counter, new Vector<GlsRecord>());
+            recordMap.put(counter, new GlsRecordList());
          }
       }
 
@@ -2861,7 +2868,7 @@ public class Bib2GlsEntry extends BibEntry
 
    public String getCsName()
    {
-      return String.format("bibglsnew%s", getEntryType());
+      return "bibglsnew"+getEntryType();
    }
 
    public void writeCsDefinition(PrintWriter writer)
@@ -2878,7 +2885,12 @@ public class Bib2GlsEntry extends BibEntry
    public void writeBibEntry(PrintWriter writer)
    throws IOException
    {
-      writer.format("\\%s{%s}%%%n{", getCsName(), getId());
+      writer.print('\\');
+      writer.print(getCsName());
+      writer.print('{');
+      writer.print(getId());
+      writer.println("}%");
+      writer.print('{');
 
       String description = "";
       String name = null;
@@ -2925,11 +2937,14 @@ public class Bib2GlsEntry extends BibEntry
                plural = value;
             }
 
-            writer.format("%s", sep);
+            writer.print(sep);
 
-            sep = String.format(",%n");
+            sep = FIELD_SEP;
 
-            writer.format("%s={%s}", field, value);
+            writer.print(field);
+            writer.print("={");
+            writer.print(value);
+            writer.print('}');
          }
          else if (bib2gls.isDebuggingOn() && 
             !bib2gls.isInternalField(field) &&
@@ -2954,8 +2969,12 @@ public class Bib2GlsEntry extends BibEntry
       }
 
       writer.println("}%");
-      writer.println(String.format("{%s}%%", name));
-      writer.println(String.format("{%s}", description));
+      writer.print('{');
+      writer.print(name);
+      writer.println("}%");
+      writer.print('{');
+      writer.print(description);
+      writer.println('}');
 
       writeInternalFields(writer);
    }
@@ -3010,8 +3029,11 @@ public class Bib2GlsEntry extends BibEntry
 
       for (String loc : locationList)
       {
-         writer.println(String.format("\\glsxtrfieldlistadd{%s}{loclist}{%s}", 
-           getId(), loc));
+         writer.print("\\glsxtrfieldlistadd{");
+         writer.print(getId());
+         writer.print("}{loclist}{");
+         writer.print(loc);
+         writer.println('}');
       }
    }
 
@@ -3024,8 +3046,7 @@ public class Bib2GlsEntry extends BibEntry
 
          if (value != null)
          {
-            writer.format("\\GlsXtrSetField{%s}{progenitor}{%s}%n", getId(), 
-              value);
+            writeGlsXtrSetField(writer, getId(), "progenitor", value);
          }
       }
    }
@@ -3035,10 +3056,27 @@ public class Bib2GlsEntry extends BibEntry
    {
       if (indexCounterRecord == null) return;
 
-      writer.format("\\GlsXtrSetField{%s}{%s}{%s}%n",
+      writeGlsXtrSetField(writer,
          getId(), "indexcounter", indexCounterRecord.getLocation());
    }
 
+   /**
+    * Writes \GlsXtrSetField{id}{field}{value} followed by a line
+    * break. This avoids the overhead of formatting for code that's
+    * written for every entry.
+    */
+   public static void writeGlsXtrSetField(PrintWriter writer, String id,
+     String field, String value)
+   {
+      writer.print("\\GlsXtrSetField{");
+      writer.print(id);
+      writer.print("}{");
+      writer.print(field);
+      writer.print("}{");
+      writer.print(value);
+      writer.println('}');
+   }
+
    public Set<String> getFieldSet()
    {
       return fieldValues.keySet();
@@ -3315,7 +3353,7 @@ public class Bib2GlsEntry extends BibEntry
 
    public void addDependency(String label)
    {
-      if (!deps.contains(label) && !label.equals(getId()))
+      if (!label.equals(getId()))
       {
          deps.add(label);
       }
@@ -3335,10 +3373,7 @@ public class Bib2GlsEntry extends BibEntry
 
       if (!label.equals(getId()))
       {
-         if (!deps.contains(label))
-         { 
-            deps.add(label);
-         }
+         deps.add(label);
 
          String field = resource.getGatherParsedDependenciesField();
 
@@ -3772,7 +3807,7 @@ public class Bib2GlsEntry extends BibEntry
          {
             if (primaryRecords == null)
             {
-               primaryRecords = new Vector<GlsRecord>();
+               primaryRecords = new GlsRecordList();
             }
 
             bib2gls.debugMessage("message.adding.primary.record", primary,
@@ -3800,7 +3835,7 @@ public class Bib2GlsEntry extends BibEntry
 
                if (list == null)
                {
-                  list = new Vector<GlsRecord>();
+                  list = new GlsRecordList();
 
                   primaryRecordMap.put(counter, list);
 
@@ -3940,7 +3975,7 @@ public class Bib2GlsEntry extends BibEntry
    {
       if (supplementalRecords == null)
       {
-         supplementalRecords = new Vector<GlsRecord>();
+         supplementalRecords = new GlsRecordList();
       }
 
       if (!bib2gls.isMultipleSupplementarySupported())
@@ -3975,7 +4010,7 @@ public class Bib2GlsEntry extends BibEntry
 
          if (list == null)
          {
-            list = new Vector<GlsRecord>();
+            list = new GlsRecordList();
             supplementalRecordMap.put(source, list);
          }
 
@@ -3996,7 +4031,7 @@ public class Bib2GlsEntry extends BibEntry
    {
       if (ignoredRecords == null)
       {
-         ignoredRecords = new Vector<GlsRecord>();
+         ignoredRecords = new GlsRecordList();
       }
 
       if (!ignoredRecords.contains(rec))
@@ -4007,6 +4042,12 @@ public class Bib2GlsEntry extends BibEntry
 
    public static void insertRecord(GlsRecord rec, Vector<GlsRecord> list)
    {
+      if (list instanceof GlsRecordList)
+      {
+         ((GlsRecordList)list).insertRecord(rec);
+         return;
+      }
+
       for (int i = 0, n = list.size(); i < n; i++)
       {
          GlsRecord r = list.get(i);
@@ -4080,7 +4121,7 @@ public class Bib2GlsEntry extends BibEntry
 
                if (thisList == null)
                {
-                  thisList = new Vector<GlsRecord>();
+                  thisList = new GlsRecordList();
                   recordMap.put(counter, thisList);
                }
 
@@ -4108,7 +4149,7 @@ public class Bib2GlsEntry extends BibEntry
       {
          if (primaryRecords == null)
          {
-            primaryRecords = new Vector<GlsRecord>();
+            primaryRecords = new GlsRecordList();
          }
 
          for (GlsRecord rec : entry.primaryRecords)
@@ -4136,7 +4177,7 @@ public class Bib2GlsEntry extends BibEntry
 
             if (list == null)
             {
-               list = new Vector<GlsRecord>();
+               list = new GlsRecordList();
                primaryRecordMap.put(counter, list);
             }
 
@@ -6103,6 +6144,21 @@ public class Bib2GlsEntry extends BibEntry
       numericSort = num;
    }
 
+   /**
+    * Gets the primitive form of the numeric sort value, which is
+    * set by the numeric and date-time comparators so that they
+    * don't need to unbox the value for each comparison.
+    */
+   public long getNumericSortKey()
+   {
+      return numericSortKey;
+   }
+
+   public void setNumericSortKey(long key)
+   {
+      numericSortKey = key;
+   }
+
    public Object getSortObject()
    {
       return sortObject;
@@ -6113,6 +6169,36 @@ public class Bib2GlsEntry extends BibEntry
       sortObject = obj;
    }
 
+   /**
+    * Gets the position of this entry's own sort value relative to
+    * the other entries being sorted (see
+    * SortComparator.setHierarchySortKeys()).
+    */
+   public int getSortRank()
+   {
+      return sortRank;
+   }
+
+   public void setSortRank(int rank)
+   {
+      sortRank = rank;
+   }
+
+   /**
+    * Gets the sort ranks of each level of this entry's hierarchy,
+    * starting with the top-level ancestor and ending with this
+    * entry.
+    */
+   public int[] getHierarchySortKey()
+   {
+      return hierarchySortKey;
+   }
+
+   public void setHierarchySortKey(int[] key)
+   {
+      hierarchySortKey = key;
+   }
+
    public void addChild(Bib2GlsEntry child)
    {
       if (children == null)
@@ -6253,7 +6339,7 @@ public class Bib2GlsEntry extends BibEntry
 
    private HashMap<String,String> fieldValues;
 
-   private Vector<String> deps;
+   private LinkedHashSet<String> deps;
 
    private Vector<Bib2GlsEntry> hierarchy;
 
@@ -6271,6 +6357,8 @@ public class Bib2GlsEntry extends BibEntry
 
    public static final int NO_SEE=0, PRE_SEE=1, POST_SEE=2;
 
+   private static final String FIELD_SEP = ","+System.lineSeparator();
+
    protected Bib2Gls bib2gls;
 
    protected GlsResource resource;
@@ -6285,8 +6373,14 @@ public class Bib2GlsEntry extends BibEntry
 
    private Number numericSort = null;
 
+   private long numericSortKey = 0L;
+
    private Object sortObject = null;
 
+   private int sortRank = 0;
+
+   private int[] hierarchySortKey = null;
+
    private int sortLevel = -1;
 
    private boolean fieldsParsed = false;
@@ -29,6 +29,8 @@ import java.text.CollationKey;
 import java.text.Normalizer;
 import java.text.BreakIterator;
 import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.dickimawbooks.texparserlib.bib.BibValueList;
 import com.dickimawbooks.bibgls.common.Bib2GlsException;
@@ -74,10 +76,28 @@ public class Bib2GlsEntryComparator extends SortComparator
       collator.setStrength(settings.getCollatorStrength());
       collator.setDecomposition(settings.getCollatorDecomposition());
 
-      if (collator instanceof RuleBasedCollator && bib2gls.isDebuggingOn())
+      if (collator instanceof RuleBasedCollator)
       {
-         bib2gls.logMessage(bib2gls.getMessage("message.collator.rules",
-           ruleString(((RuleBasedCollator)collator).getRules())));
+         String rules = ((RuleBasedCollator)collator).getRules();
+
+         if (bib2gls.isDebuggingOn())
+         {
+            bib2gls.logMessage(bib2gls.getMessage("message.collator.rules",
+              ruleString(rules)));
+         }
+
+         GlsResource resource = bib2gls.getCurrentResource();
+
+         if (resource != null)
+         {
+            collationKeys = resource.getCollationKeyCache(rules,
+              collator.getStrength(), collator.getDecomposition());
+
+            breakPointValues = resource.getBreakPointCache(
+              String.format("%d\t%s\t%s", settings.getBreakPoint(),
+                breakIterator == null ? "" : locale.toLanguageTag(),
+                getBreakPointMarker()));
+         }
       }
    }
 
@@ -233,15 +253,32 @@ public class Bib2GlsEntryComparator extends SortComparator
 
       if (settings.isBreakAtOn(entry))
       {
-         value = breakPoints(value).toString();
+         value = getBreakPointValue(value);
 
-         bib2gls.debug(bib2gls.getMessage("message.break.points",
-              value));
+         bib2gls.debugMessage("message.break.points", value);
       }
 
       entry.putField(sortStorageField, value);
 
-      CollationKey key = collator.getCollationKey(value);
+      CollationKey key;
+
+      if (deferCollationKeys)
+      {
+         // computed in parallel by prepareSortKeys() unless
+         // already cached
+         key = (collationKeys == null ? null : collationKeys.get(value));
+
+         if (key == null)
+         {
+            pendingEntries.add(entry);
+            pendingValues.add(value);
+         }
+      }
+      else
+      {
+         key = getCollationKey(value);
+      }
+
       entry.setCollationKey(key);
 
       GlsResource resource = bib2gls.getCurrentResource();
@@ -277,8 +314,7 @@ public class Bib2GlsEntryComparator extends SortComparator
          }
          else if (collator instanceof RuleBasedCollator)
          {
-            CollationElementIterator it =
-              ((RuleBasedCollator)collator).getCollationElementIterator(value);
+            CollationElementIterator it = getCollationElementIterator(value);
 
             int elem = it.next();
             int offset = it.getOffset();
@@ -294,10 +330,14 @@ public class Bib2GlsEntryComparator extends SortComparator
             String str;
             int cp = 0;
 
+            String assignmentKey = null;
+            GroupAssignment assignment = null;
+            String formattedTitle = null;
+
             if (elem == CollationElementIterator.NULLORDER)
             {
-               bib2gls.debug(bib2gls.getMessage("message.no.collation.element",
-                 value));
+               bib2gls.debugMessage("message.no.collation.element",
+                 value);
 
                if (collator.getStrength() == Collator.PRIMARY)
                {
@@ -324,126 +364,167 @@ public class Bib2GlsEntryComparator extends SortComparator
             {
                str = value.substring(start, offset==0?1:offset);
 
-               grp = str;
+               if (groupAssignments != null)
+               {
+                  String parent = entry.getParent();
 
-               int strength = collator.getStrength();
+                  assignmentKey = (type == null ? "" : type) + "\u001f"
+                     + (parent == null ? "" : parent)
+                     + "\u001f" + elem + "\u001f" + str;
 
-               collator.setStrength(Collator.PRIMARY);
+                  assignment = groupAssignments.get(assignmentKey);
 
-               String norm = Normalizer.normalize(
-                      str.toLowerCase(locale), Normalizer.Form.NFD);
-               norm = norm.replaceAll("\\p{M}", "");
+                  if (assignment != null && !assignment.isValid())
+                  {
+                     assignment = null;
+                  }
+               }
 
-               if (collator.compare(str, norm) == 0)
+               if (assignment == null)
                {
-                  grp = norm;
-               }
+                  grp = str;
 
-               collator.setStrength(strength);
-            }
+                  int strength = collator.getStrength();
 
-            if (!grp.isEmpty())
-            {
-               cp = grp.codePointAt(0);
+                  collator.setStrength(Collator.PRIMARY);
+
+                  String norm = Normalizer.normalize(
+                         str.toLowerCase(locale), Normalizer.Form.NFD);
+                  norm = norm.replaceAll("\\p{M}", "");
+
+                  if (collator.compare(str, norm) == 0)
+                  {
+                     grp = norm;
+                  }
+
+                  collator.setStrength(strength);
+               }
             }
 
-            if (settings.getGroupFormation() != SortSettings.GROUP_DEFAULT)
+            if (assignment != null)
             {
-               grp = setGroupTitle(entry, cp, value, str, type);
+               // same leading letter, type and parent as an
+               // earlier entry
+               grp = assignment.grp;
+               grpTitle = assignment.groupTitle;
+               groupFieldValue = assignment.groupFieldValue;
             }
             else
             {
-               // The Dutch ij digraph should have both letters
-               // converted to upper case. Other digraphs only have the
-               // first letter converted. Rather than hard-coding
-               // for just "ij", allow exceptions to be provided
-               // in the language resource file. For example
-               // <entry key="grouptitle.case.ij">IJ</entry>
-   
-               String grpCase = resource.getLocalisationTextIfExists(
-                 "grouptitle.case", locale, grp);
-   
-               if (grpCase != null)
+               if (!grp.isEmpty())
                {
-                  grp = grpCase;
-                  cp = Character.toTitleCase(cp);
+                  cp = grp.codePointAt(0);
                }
-               else if (Character.isAlphabetic(cp))
-               {
-                  int titleCodePoint = Character.toTitleCase(cp);
-   
-                  if (cp == titleCodePoint && Character.isLowerCase(cp))
-                  {
-                     grpCase = grp.toLowerCase(locale);
-                     grpCase = resource.toSentenceCase(grpCase, locale).toString();
 
-                     titleCodePoint = grpCase.codePointAt(0);
-                  }
-                  else
-                  {
-                     grp = String.format("%c%s", titleCodePoint,
-                        grp.substring(Character.charCount(cp)).toLowerCase(locale));
-                  }
-
-                  cp = titleCodePoint;
+               if (settings.getGroupFormation() != SortSettings.GROUP_DEFAULT)
+               {
+                  grp = setGroupTitle(entry, cp, value, str, type);
                }
-   
-               if (Character.isAlphabetic(cp))
+               else
                {
-                  if (collator.getStrength() != Collator.PRIMARY)
-                  {
-                     elem = cp;
-                  }
+                  // The Dutch ij digraph should have both letters
+                  // converted to upper case. Other digraphs only have the
+                  // first letter converted. Rather than hard-coding
+                  // for just "ij", allow exceptions to be provided
+                  // in the language resource file. For example
+                  // <entry key="grouptitle.case.ij">IJ</entry>
    
-                  grpTitle = resource.getGroupTitle(type, elem,
-                    entry.getParent());
-                  String args;
+                  String grpCase = resource.getLocalisationTextIfExists(
+                    "grouptitle.case", locale, grp);
    
-                  if (grpTitle == null)
+                  if (grpCase != null)
                   {
-                     grpTitle = new GroupTitle(bib2gls, grp, str, elem, type, entry.getParent());
-                     resource.putGroupTitle(grpTitle, entry);
-                     args = grpTitle.format();
+                     grp = grpCase;
+                     cp = Character.toTitleCase(cp);
                   }
-                  else
+                  else if (Character.isAlphabetic(cp))
                   {
-                     args = grpTitle.format(str);
+                     int titleCodePoint = Character.toTitleCase(cp);
    
-                     if (grpTitle.getTitle().matches(".*[^\\p{ASCII}].*")
-                         && grp.matches("\\p{ASCII}+"))
+                     if (cp == titleCodePoint && Character.isLowerCase(cp))
                      {
-                        grpTitle.setTitle(grp);
+                        grpCase = grp.toLowerCase(locale);
+                        grpCase = resource.toSentenceCase(grpCase, locale).toString();
+
+                        titleCodePoint = grpCase.codePointAt(0);
                      }
+                     else
+                     {
+                        grp = String.format("%c%s", titleCodePoint,
+                           grp.substring(Character.charCount(cp)).toLowerCase(locale));
+                     }
+
+                     cp = titleCodePoint;
                   }
    
-                  groupFieldValue = String.format("\\%s%s",
-                     grpTitle.getCsLabelName(), args);
-               }
-               else
-               {
-                  if (str.equals("\\") || str.equals("{") ||
-                   str.equals("}"))
+                  if (Character.isAlphabetic(cp))
                   {
-                     str = "\\char`\\"+str;
-                  }
+                     if (collator.getStrength() != Collator.PRIMARY)
+                     {
+                        elem = cp;
+                     }
    
-                  grpTitle = resource.getGroupTitle(type, elem,
-                     entry.getParent());
-                  String args;
+                     grpTitle = resource.getGroupTitle(type, elem,
+                       entry.getParent());
+                     String args;
    
-                  if (grpTitle == null)
-                  {
-                     grpTitle = new OtherGroupTitle(bib2gls, str, elem, type, entry.getParent());
-                     resource.putGroupTitle(grpTitle, entry);
-                     args = grpTitle.toString();
+                     if (grpTitle == null)
+                     {
+                        grpTitle = new GroupTitle(bib2gls, grp, str, elem, type, entry.getParent());
+                        resource.putGroupTitle(grpTitle, entry);
+                        args = grpTitle.format();
+                     }
+                     else
+                     {
+                        formattedTitle = grpTitle.getTitle();
+                        args = grpTitle.format(str);
+   
+                        if (grpTitle.getTitle().matches(".*[^\\p{ASCII}].*")
+                            && grp.matches("\\p{ASCII}+"))
+                        {
+                           grpTitle.setTitle(grp);
+                        }
+                     }
+   
+                     groupFieldValue = String.format("\\%s%s",
+                        grpTitle.getCsLabelName(), args);
                   }
                   else
                   {
-                     args = grpTitle.format(str);
-                  }
+                     if (str.equals("\\") || str.equals("{") ||
+                      str.equals("}"))
+                     {
+                        str = "\\char`\\"+str;
+                     }
+   
+                     grpTitle = resource.getGroupTitle(type, elem,
+                        entry.getParent());
+                     String args;
    
-                  groupFieldValue = 
-                    String.format("\\%s%s", grpTitle.getCsLabelName(), args);
+                     if (grpTitle == null)
+                     {
+                        grpTitle = new OtherGroupTitle(bib2gls, str, elem, type, entry.getParent());
+                        resource.putGroupTitle(grpTitle, entry);
+                        args = grpTitle.toString();
+                     }
+                     else
+                     {
+                        formattedTitle = grpTitle.getTitle();
+                        args = grpTitle.format(str);
+                     }
+   
+                     groupFieldValue = 
+                       String.format("\\%s%s", grpTitle.getCsLabelName(), args);
+                  }
+               }
+
+               // Only reuse the result once the group exists, as the
+               // first entry in a group has different arguments.
+
+               if (formattedTitle != null && assignmentKey != null)
+               {
+                  groupAssignments.put(assignmentKey, new GroupAssignment(
+                    grp, grpTitle, formattedTitle, groupFieldValue));
                }
             }
          }
@@ -500,6 +581,50 @@ public class Bib2GlsEntryComparator extends SortComparator
       return value;
    }
 
+   /**
+    * Gets the collation key for the given sort value. The key is
+    * reused if the same value has already been collated with the
+    * same collator settings for this resource set.
+    */
+   protected CollationKey getCollationKey(String value)
+   {
+      if (collationKeys == null)
+      {
+         return collator.getCollationKey(value);
+      }
+
+      CollationKey key = collationKeys.get(value);
+
+      if (key == null)
+      {
+         key = collator.getCollationKey(value);
+         collationKeys.put(value, key);
+      }
+
+      return key;
+   }
+
+   /**
+    * Gets the given sort value with break point markers inserted.
+    */
+   protected String getBreakPointValue(String value)
+   {
+      if (breakPointValues == null)
+      {
+         return breakPoints(value).toString();
+      }
+
+      String result = breakPointValues.get(value);
+
+      if (result == null)
+      {
+         result = breakPoints(value).toString();
+         breakPointValues.put(value, result);
+      }
+
+      return result;
+   }
+
    @Override
    public int compareElements(Bib2GlsEntry entry1, Bib2GlsEntry entry2)
    {
@@ -516,10 +641,176 @@ public class Bib2GlsEntryComparator extends SortComparator
 
    public void sortEntries() throws Bib2GlsException
    {
-      bib2gls.debug(bib2gls.getMessage("message.setting.sort",
-        collator.getStrength(), collator.getDecomposition()));
+      bib2gls.debugMessage("message.setting.sort",
+        collator.getStrength(), collator.getDecomposition());
+
+      // Verbose mode shows each collation key as the sort value
+      // is set.
+      deferCollationKeys = isParallelSortOn(entries.size())
+         && !bib2gls.isVerbose();
 
-      super.sortEntries();
+      if (deferCollationKeys)
+      {
+         pendingEntries = new Vector<Bib2GlsEntry>();
+         pendingValues = new Vector<String>();
+      }
+
+      if (settings.getGroupFormation() == SortSettings.GROUP_DEFAULT)
+      {
+         groupAssignments = new HashMap<String,GroupAssignment>();
+      }
+
+      try
+      {
+         super.sortEntries();
+      }
+      finally
+      {
+         deferCollationKeys = false;
+         pendingEntries = null;
+         pendingValues = null;
+         groupAssignments = null;
+      }
+   }
+
+   @Override
+   protected boolean supportsParallelSort()
+   {
+      return true;
+   }
+
+   /**
+    * Computes any collation keys that were deferred by
+    * updateSortValue(Bib2GlsEntry,Vector). Collation is the most
+    * time-consuming part of setting up the sort for large resource
+    * sets so the keys are computed in parallel. Each task uses its
+    * own copy of the collator, as getting a collation key isn't
+    * concurrent.
+    */
+   @Override
+   protected void prepareSortKeys()
+   {
+      if (!deferCollationKeys)
+      {
+         return;
+      }
+
+      int n = pendingEntries.size();
+
+      if (n == 0)
+      {
+         return;
+      }
+
+      Bib2GlsEntry[] entryArray = pendingEntries.toArray(new Bib2GlsEntry[n]);
+      String[] valueArray = pendingValues.toArray(new String[n]);
+
+      ForkJoinPool pool = new ForkJoinPool(bib2gls.getJobs());
+
+      try
+      {
+         pool.invoke(new CollationKeyTask(entryArray, valueArray, 0, n));
+      }
+      finally
+      {
+         pool.shutdown();
+      }
+
+      if (collationKeys != null)
+      {
+         for (int i = 0; i < n; i++)
+         {
+            collationKeys.put(valueArray[i], entryArray[i].getCollationKey());
+         }
+      }
+   }
+
+   /*
+    * The iterator is reused for each sort value, as the sort values
+    * are set in turn.
+    */
+   private CollationElementIterator getCollationElementIterator(String value)
+   {
+      if (collationElementIterator == null)
+      {
+         collationElementIterator =
+           ((RuleBasedCollator)collator).getCollationElementIterator(value);
+      }
+      else
+      {
+         collationElementIterator.setText(value);
+      }
+
+      return collationElementIterator;
+   }
+
+   /*
+    * The group assigned to an entry with the default group
+    * formation only depends on the leading collation element of the
+    * sort value (and the corresponding substring), the entry type
+    * and the parent, so the result is remembered for later entries
+    * that have the same combination. The formatted group field
+    * value includes the group title, which may be changed by a
+    * later entry, so the result can't be reused if the title has
+    * changed.
+    */
+   private static class GroupAssignment
+   {
+      GroupAssignment(String grp, GroupTitle groupTitle,
+        String formattedTitle, String groupFieldValue)
+      {
+         this.grp = grp;
+         this.groupTitle = groupTitle;
+         this.formattedTitle = formattedTitle;
+         this.groupFieldValue = groupFieldValue;
+      }
+
+      boolean isValid()
+      {
+         return formattedTitle.equals(groupTitle.getTitle());
+      }
+
+      String grp, formattedTitle, groupFieldValue;
+      GroupTitle groupTitle;
+   }
+
+   private class CollationKeyTask extends RecursiveAction
+   {
+      CollationKeyTask(Bib2GlsEntry[] entryArray, String[] valueArray,
+        int start, int end)
+      {
+         this.entryArray = entryArray;
+         this.valueArray = valueArray;
+         this.start = start;
+         this.end = end;
+      }
+
+      @Override
+      protected void compute()
+      {
+         if (end - start > COLLATION_KEY_BLOCK_SIZE)
+         {
+            int mid = (start + end) >>> 1;
+
+            invokeAll(
+              new CollationKeyTask(entryArray, valueArray, start, mid),
+              new CollationKeyTask(entryArray, valueArray, mid, end));
+         }
+         else
+         {
+            Collator taskCollator = (Collator)collator.clone();
+
+            for (int i = start; i < end; i++)
+            {
+               entryArray[i].setCollationKey(
+                 taskCollator.getCollationKey(valueArray[i]));
+            }
+         }
+      }
+
+      private Bib2GlsEntry[] entryArray;
+      private String[] valueArray;
+      private int start, end;
    }
 
    protected CharSequence breakUpperNotLower(String target)
@@ -619,6 +910,19 @@ public class Bib2GlsEntryComparator extends SortComparator
 
    private Collator collator;
 
+   private HashMap<String,CollationKey> collationKeys = null;
+
+   private boolean deferCollationKeys = false;
+   private Vector<Bib2GlsEntry> pendingEntries = null;
+   private Vector<String> pendingValues = null;
+
+   private CollationElementIterator collationElementIterator = null;
+   private HashMap<String,GroupAssignment> groupAssignments = null;
+
+   private static final int COLLATION_KEY_BLOCK_SIZE = 1024;
+
+   private HashMap<String,String> breakPointValues = null;
+
    private BreakIterator breakIterator=null;
 
    protected Locale locale;
@@ -130,6 +130,7 @@ public class Bib2GlsEntryDateTimeComparator extends SortComparator
       }
 
       entry.setNumericSort(num);
+      entry.setNumericSortKey(num.longValue());
       entry.setSortObject(dateValue);
 
       return value;
@@ -201,10 +202,14 @@ public class Bib2GlsEntryDateTimeComparator extends SortComparator
    protected int compareElements(Bib2GlsEntry entry1,
      Bib2GlsEntry entry2)
    {
-      Number val1 = entry1.getNumericSort();
-      Number val2 = entry2.getNumericSort();
+      return Long.compare(entry1.getNumericSortKey(),
+        entry2.getNumericSortKey());
+   }
 
-      return compare(val1, val2);
+   @Override
+   protected boolean supportsParallelSort()
+   {
+      return true;
    }
 
    private boolean hasDate, hasTime;
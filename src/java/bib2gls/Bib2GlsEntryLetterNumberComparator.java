@@ -21,8 +21,6 @@ package com.dickimawbooks.bibgls.bib2gls;
 import java.util.Vector;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 
 import com.dickimawbooks.texparserlib.bib.BibValueList;
 
@@ -150,10 +148,10 @@ public class Bib2GlsEntryLetterNumberComparator
          sortStr = builder.toString();
       }
 
-      if (!sortStr.isEmpty())
-      {
-         entry.setSortObject(getSortList(sortStr));
-      }
+      // Create the components now, rather than when the entry is
+      // first compared. (An empty value has no components.)
+
+      entry.setSortObject(getSortList(sortStr));
 
       return super.adjustSort(entry, sortStr);
    }
@@ -170,29 +168,34 @@ public class Bib2GlsEntryLetterNumberComparator
 
       for ( ; i < n1 && j < n2; i++, j++)
       {
-         SortComponent comp1 = list1.get(i);
-         SortComponent comp2 = list2.get(j);
+         int kind1 = list1.getKind(i);
+         int value1 = list1.getValue(i);
+         int kind2 = list2.getKind(j);
+         int value2 = list2.getValue(j);
 
          // upperlower and lowerupper are awkward with between setting
 
          if ((caseStyle == UPPERLOWER || caseStyle == LOWERUPPER)
               && numberPosition == NUMBER_BETWEEN)
          {
-            boolean isNum1 = (comp1 instanceof ComponentNumber);
-            boolean isNum2 = (comp2 instanceof ComponentNumber);
+            boolean isNum1 = isNumber(kind1);
+            boolean isNum2 = isNumber(kind2);
+
+            // If there's no following component, a null letter
+            // is used.
 
             if (isNum1 && isNum2)
             {
-               SortComponent next1 = (i < n1-1 ? list1.get(i+1) : 
-                 NULL_COMPONENT);
-               SortComponent next2 = (j < n2-1 ? list2.get(j+1) : 
-                 NULL_COMPONENT);
-
-               if (next1 instanceof ComponentLetter
-                   && next2 instanceof ComponentLetter
-                   && next1.getValue() == next2.getValue())
+               int nextKind1 = (i < n1-1 ? list1.getKind(i+1) : KIND_LETTER);
+               int nextValue1 = (i < n1-1 ? list1.getValue(i+1) : 0);
+               int nextKind2 = (j < n2-1 ? list2.getKind(j+1) : KIND_LETTER);
+               int nextValue2 = (j < n2-1 ? list2.getValue(j+1) : 0);
+
+               if (nextKind1 == KIND_LETTER
+                   && nextKind2 == KIND_LETTER
+                   && nextValue1 == nextValue2)
                {
-                  result = comp1.compareTo(comp2);
+                  result = compareComponents(kind1, value1, kind2, value2);
                }
                else
                {// skip the number
@@ -201,89 +204,95 @@ public class Bib2GlsEntryLetterNumberComparator
             }
             else if (isNum1 && !isNum2)
             {
-               SortComponent nextC = (i < n1-1 ? list1.get(i+1) : 
-                 NULL_COMPONENT);
+               int nextKind = (i < n1-1 ? list1.getKind(i+1) : KIND_LETTER);
+               int nextValue = (i < n1-1 ? list1.getValue(i+1) : 0);
 
-               if (nextC instanceof ComponentLetter)
+               if (nextKind == KIND_LETTER)
                {
-                  int cp1 = nextC.getValue();
-                  int cp2 = comp2.getValue();
+                  int cp1 = nextValue;
+                  int cp2 = value2;
 
                   if (cp1 == cp2)
                   {// character following number is a letter identical to comp2
                    // compare number with letter
-                     result = comp1.compareTo(comp2);
+                     result = compareComponents(kind1, value1, kind2, value2);
                   }
                   else if (Character.toLowerCase(cp1)
                     == Character.toLowerCase(cp2))
                   {// Character following number is a letter 
                    // that's lowercase-identical to comp2.
                    // Compare both letters instead.
-                     result = nextC.compareTo(comp2);
+                     result = compareComponents(nextKind, nextValue,
+                       kind2, value2);
 
                      if (result == 0)
                      {// compare number with letter
-                        result = comp1.compareTo(comp2);
+                        result = compareComponents(kind1, value1,
+                          kind2, value2);
                      }
                   }
                   else
                   {// skip the number
-                     result = nextC.compareTo(comp2);
+                     result = compareComponents(nextKind, nextValue,
+                       kind2, value2);
                      i++;
                   }
                }
                else
                {
-                  result = comp1.compareTo(comp2);
+                  result = compareComponents(kind1, value1, kind2, value2);
                }
             }
             else if (!isNum1 && isNum2)
             {
-               SortComponent nextC = (j < n2-1 ? list2.get(j+1) : 
-                 NULL_COMPONENT);
+               int nextKind = (j < n2-1 ? list2.getKind(j+1) : KIND_LETTER);
+               int nextValue = (j < n2-1 ? list2.getValue(j+1) : 0);
 
-               if (nextC instanceof ComponentLetter)
+               if (nextKind == KIND_LETTER)
                {
-                  int cp1 = comp1.getValue();
-                  int cp2 = nextC.getValue();
+                  int cp1 = value1;
+                  int cp2 = nextValue;
 
                   if (cp1 == cp2)
                   {// character following number is a letter identical to comp1
                    // compare number with letter
-                     result = comp1.compareTo(comp2);
+                     result = compareComponents(kind1, value1, kind2, value2);
                   }
                   else if (Character.toLowerCase(cp1)
                     == Character.toLowerCase(cp2))
                   {// Character following number is a letter 
                    // that's lowercase-identical to comp1.
                    // Compare both letters instead.
-                     result = comp1.compareTo(nextC);
+                     result = compareComponents(kind1, value1,
+                       nextKind, nextValue);
 
                      if (result == 0)
                      {// compare number with letter
-                        result = comp1.compareTo(comp2);
+                        result = compareComponents(kind1, value1,
+                          kind2, value2);
                      }
                   }
                   else
                   {// skip the number
-                     result = comp1.compareTo(nextC);
+                     result = compareComponents(kind1, value1,
+                       nextKind, nextValue);
                      j++;
                   }
                }
                else
                {
-                  result = comp1.compareTo(comp2);
+                  result = compareComponents(kind1, value1, kind2, value2);
                }
             }
             else
             {
-               result = comp1.compareTo(comp2);
+               result = compareComponents(kind1, value1, kind2, value2);
             }
 
          }
          else
          {
-            result = comp1.compareTo(comp2);
+            result = compareComponents(kind1, value1, kind2, value2);
          }
 
          if (result != 0)
@@ -318,6 +327,9 @@ public class Bib2GlsEntryLetterNumberComparator
          list2 = (ComponentList)object2;
       }
 
+      // The lists are normally created by adjustSort before
+      // sorting starts.
+
       if (list1 == null)
       {
          String str1 = entry1.getFieldValue(sortStorageField);
@@ -349,25 +361,11 @@ public class Bib2GlsEntryLetterNumberComparator
 
       if (list2 == null)
       {
-         String str2 = entry1.getFieldValue(sortStorageField);
+         String str2 = entry2.getFieldValue(sortStorageField);
 
          if (str2 == null || str2.isEmpty())
          {
-            if (list1 != null)
-            {
-               return 1;
-            }
-
-            String str1 = entry1.getFieldValue(sortStorageField);
-
-            if (str1 == null || str1.isEmpty())
-            {
-               return 0;
-            }
-            else
-            {
-               return 1;
-            }
+            return 1;
          }
          else
          {
@@ -379,674 +377,809 @@ public class Bib2GlsEntryLetterNumberComparator
       return compareElements(list1, list2);
    }
 
+   /**
+    * Splits the sort value into letter, space, punctuation and
+    * number components in a single pass. Numbers are identified in
+    * the same way as the first group of Bib2Gls.INT_PATTERN but
+    * without matching the pattern against the remainder of the
+    * string at each position.
+    */
    public ComponentList getSortList(String str)
    {
-      ComponentList list = new ComponentList(str.length());
+      int n = str.length();
+
+      ComponentList list = new ComponentList(n);
+
+      // INT_PATTERN ends with .* which doesn't match line
+      // terminators, so a number can't be identified if there's a
+      // line terminator anywhere after it.
+
+      int numberStart = 0;
+
+      for (int i = n-1; i >= 0; i--)
+      {
+         if (isLineTerminator(str.charAt(i)))
+         {
+            numberStart = i+1;
+            break;
+         }
+      }
 
-      for (int i = 0; i < str.length(); )
+      for (int i = 0; i < n; )
       {
          int cp = str.codePointAt(i);
+         int next = i + Character.charCount(cp);
+
+         int end = (i < numberStart ? -1 : getIntegerEnd(str, i, cp, next));
 
-         Matcher m = Bib2Gls.INT_PATTERN.matcher(str.substring(i));
-         Integer num = null;
+         boolean isNumber = false;
+         int num = 0;
 
-         if (m.matches())
+         if (end > i)
          {
             try
             {
-               num = Bib2Gls.parseInt(m.group(1));
+               num = Bib2Gls.parseInt(str.substring(i, end));
+               isNumber = true;
 
-               i += m.end(1);
+               i = end;
             }
             catch (NumberFormatException e)
-            {// shouldn't happen since pattern match ensures correct format
-               i += Character.charCount(cp);
+            {// e.g. too large
+               i = next;
             }
          }
          else
          {
-            i += Character.charCount(cp);
+            i = next;
          }
 
-         if (num == null)
+         if (isNumber)
          {
-            if (Character.isLetter(cp))
+            list.add(KIND_NUMBER, num);
+         }
+         else if (Character.isLetter(cp))
+         {
+            if ((caseStyle == UPPERLOWER || caseStyle == LOWERUPPER)
+                  && numberPosition == NUMBER_BETWEEN
+                  && !(!list.isEmpty() && isNumber(list.getLastKind())))
             {
-               SortComponent prev = list.isEmpty() ? null : list.lastElement();
+               boolean isUpper = Character.isUpperCase(cp)
+                                || Character.isTitleCase(cp);
 
-               if ((caseStyle == UPPERLOWER || caseStyle == LOWERUPPER)
-                     && numberPosition == NUMBER_BETWEEN
-                     && !(prev instanceof ComponentNumber))
+               if (caseStyle == UPPERLOWER)
                {
-                  boolean isUpper = Character.isUpperCase(cp)
-                                   || Character.isTitleCase(cp);
-
-                  if (caseStyle == UPPERLOWER)
-                  {
-                     list.add(isUpper ? MIN_COMPONENT : MAX_COMPONENT);
-                  }
-                  else
-                  {
-                     list.add(isUpper ? MAX_COMPONENT : MIN_COMPONENT);
-                  }
+                  list.add(isUpper ? KIND_MIN_NUMBER : KIND_MAX_NUMBER,
+                           isUpper ? Integer.MIN_VALUE : Integer.MAX_VALUE);
                }
-               else if (caseStyle == TOLOWER)
+               else
                {
-                  cp = Character.toLowerCase(cp);
+                  list.add(isUpper ? KIND_MAX_NUMBER : KIND_MIN_NUMBER,
+                           isUpper ? Integer.MAX_VALUE : Integer.MIN_VALUE);
                }
-
-               list.add(new ComponentLetter(cp));
             }
-            else if (Character.isWhitespace(cp))
+            else if (caseStyle == TOLOWER)
             {
-               list.add(new ComponentSpace(cp));
-            }
-            else
-            {
-               list.add(new ComponentOther(cp));
+               cp = Character.toLowerCase(cp);
             }
+
+            list.add(KIND_LETTER, cp);
+         }
+         else if (Character.isWhitespace(cp))
+         {
+            list.add(KIND_SPACE, cp);
          }
          else
          {
-            list.add(new ComponentNumber(num));
+            list.add(KIND_OTHER, cp);
          }
       }
 
       return list;
    }
 
-   class ComponentList extends Vector<SortComponent>
+   /*
+    * Gets the end of the integer at the given index or -1 if there
+    * isn't one. This tries the alternatives in INT_PATTERN's first
+    * group in the same order. Note that the sign class in that
+    * pattern is a range from U+002B to U+2212.
+    */
+   private static int getIntegerEnd(String str, int idx, int cp, int next)
    {
-      public ComponentList()
+      int end;
+
+      if (cp >= '+' && cp <= Bib2Gls.MINUS)
       {
-         super();
+         end = skipDigits(str, next);
+
+         if (end > next)
+         {
+            return end;
+         }
       }
 
-      public ComponentList(int capacity)
+      end = skipDigits(str, idx);
+
+      if (end > idx)
       {
-         super(capacity);
+         return end;
       }
 
-      public String toString()
+      if (cp == Bib2Gls.SUBSCRIPT_PLUS || cp == Bib2Gls.SUBSCRIPT_MINUS)
       {
-         StringBuilder builder = new StringBuilder(capacity());
+         end = skipSubscriptDigits(str, next);
 
-         for (SortComponent element : this)
+         if (end > next)
          {
-            builder.append(element.toString());
+            return end;
          }
-
-         return builder.toString();
       }
-   }
 
-   class SortComponent
-   {
-      public SortComponent(int theValue)
-      {
-         value = theValue;
-      }
+      end = skipSubscriptDigits(str, idx);
 
-      public int getValue()
+      if (end > idx)
       {
-         return value;
+         return end;
       }
 
-      public String toString()
+      if (cp == Bib2Gls.SUPERSCRIPT_PLUS || cp == Bib2Gls.SUPERSCRIPT_MINUS)
       {
-         if (value == 0 || value == Integer.MIN_VALUE
-              || value == Integer.MAX_VALUE)
-         {
-            if (bib2gls.isDebuggingOn())
-            {
-               return value == 0 ? "" : (value < 0 ? "\u2199" : "\u2197");
-            }
-            else
-            {
-               return "";
-            }
-         }
-         else if (value <= Character.MAX_VALUE)
+         end = skipSuperscriptDigits(str, next);
+
+         if (end > next)
          {
-            return String.format("%c", (char)value);
+            return end;
          }
-         else
+      }
+
+      end = skipSuperscriptDigits(str, idx);
+
+      return end > idx ? end : -1;
+   }
+
+   private static int skipDigits(String str, int idx)
+   {
+      for (int n = str.length(); idx < n; )
+      {
+         int cp = str.codePointAt(idx);
+
+         if (!Character.isDigit(cp))
          {
-            return new String(Character.toChars(getValue()));
+            break;
          }
+
+         idx += Character.charCount(cp);
       }
 
-      public int compareTo(SortComponent component)
+      return idx;
+   }
+
+   private static int skipSubscriptDigits(String str, int idx)
+   {
+      for (int n = str.length(); idx < n; )
       {
-         if (value == component.value)
+         int cp = str.codePointAt(idx);
+
+         if (!Bib2Gls.isSubscriptDigit(cp))
          {
-            return 0;
+            break;
          }
-         else if (value < component.value)
+
+         idx += Character.charCount(cp);
+      }
+
+      return idx;
+   }
+
+   private static int skipSuperscriptDigits(String str, int idx)
+   {
+      for (int n = str.length(); idx < n; )
+      {
+         int cp = str.codePointAt(idx);
+
+         if (!Bib2Gls.isSuperscriptDigit(cp))
          {
-            return -1;
+            break;
          }
 
-         return 1;
+         idx += Character.charCount(cp);
       }
 
-      private int value;
+      return idx;
+   }
+
+   private static boolean isLineTerminator(char c)
+   {
+      return c == '\n' || c == '\r' || c == '\u0085'
+          || c == '\u2028' || c == '\u2029';
+   }
+
+   /*
+    * The "missing number" markers (inserted before letters with
+    * the upperlower and lowerupper settings) count as numbers.
+    */
+   private static boolean isNumber(int kind)
+   {
+      return kind == KIND_NUMBER || kind == KIND_MIN_NUMBER
+          || kind == KIND_MAX_NUMBER;
    }
 
-   class ComponentLetter extends SortComponent
+   private static int compareValues(int value1, int value2)
    {
-      public ComponentLetter(int codePoint)
+      if (value1 == value2)
       {
-         super(codePoint);
+         return 0;
       }
 
-      public int compareTo(SortComponent other)
+      return value1 < value2 ? -1 : 1;
+   }
+
+   protected int compareComponents(int kind1, int value1,
+     int kind2, int value2)
+   {
+      switch (kind1)
       {
-         if (other instanceof ComponentLetter)
-         {
-            // both are letters
-            return compare(getValue(), other.getValue());
-         }
+         case KIND_LETTER:
+           return compareLetter(value1, kind2, value2);
+         case KIND_SPACE:
+           return compareSpace(value1, kind2, value2);
+         case KIND_OTHER:
+           return compareOther(value1, kind2, value2);
+      }
 
-         if (other instanceof ComponentNumber)
-         {// other is a number
+      return compareNumber(kind1, value1, kind2, value2);
+   }
 
-            switch (numberPosition)
-            {
-               case NUMBER_FIRST:
-               case NUMBER_BEFORE_LETTER:
-                 return 1;
-               case NUMBER_LAST:
-               case NUMBER_AFTER_LETTER:
-                 return -1;
-               case NUMBER_BETWEEN:
-
-                 boolean isUpper = Character.isUpperCase(getValue())
-                    || Character.isTitleCase(getValue());
-                 boolean isLower = Character.isLowerCase(getValue());
-
-                 switch (caseStyle)
-                 {
-                    case CASE:
-                    case UPPERLOWER:
-                      return isUpper ? -1 : 1;
-                    case TOLOWER:
-                      // numbers always before letters
-                      return 1;
-                    case LOWERUPPER:
-                      return isLower ? -1 : 1;
-                    default:
-                      // shouldn't happen
-                      throw new IllegalArgumentException(
-                        "Invalid case setting: "+caseStyle);
-                 }
-
-               default:
-                  // shouldn't happen
-
-                 throw new IllegalArgumentException(
-                    "Invalid case setting: "+caseStyle);
-            }
-         }
+   private int compareLetter(int value, int otherKind, int otherValue)
+   {
+      if (otherKind == KIND_LETTER)
+      {
+         // both are letters
+         return compare(value, otherValue);
+      }
+
+      if (isNumber(otherKind))
+      {// other is a number
 
-         if (other instanceof ComponentSpace
-          || other instanceof ComponentOther)
+         switch (numberPosition)
          {
-            // other is either space or punctuation 
+            case NUMBER_FIRST:
+            case NUMBER_BEFORE_LETTER:
+              return 1;
+            case NUMBER_LAST:
+            case NUMBER_AFTER_LETTER:
+              return -1;
+            case NUMBER_BETWEEN:
+
+              boolean isUpper = Character.isUpperCase(value)
+                 || Character.isTitleCase(value);
+              boolean isLower = Character.isLowerCase(value);
+
+              switch (caseStyle)
+              {
+                 case CASE:
+                 case UPPERLOWER:
+                   return isUpper ? -1 : 1;
+                 case TOLOWER:
+                   // numbers always before letters
+                   return 1;
+                 case LOWERUPPER:
+                   return isLower ? -1 : 1;
+                 default:
+                   // shouldn't happen
+                   throw new IllegalArgumentException(
+                     "Invalid case setting: "+caseStyle);
+              }
+
+            default:
+               // shouldn't happen
+
+              throw new IllegalArgumentException(
+                 "Invalid case setting: "+caseStyle);
+         }
+      }
 
-            switch (puncPosition)
-            {
-               case PUNCTUATION_SPACE_FIRST:
-               case SPACE_PUNCTUATION_FIRST:
+      // other is either space or punctuation 
 
-                  // punctuation/space come before letters
-                  return 1;
+      switch (puncPosition)
+      {
+         case PUNCTUATION_SPACE_FIRST:
+         case SPACE_PUNCTUATION_FIRST:
 
-               case PUNCTUATION_SPACE_LAST:
-               case SPACE_PUNCTUATION_LAST:
+            // punctuation/space come before letters
+            return 1;
 
-                  // punctuation/space come after letters
-                  return -1;
+         case PUNCTUATION_SPACE_LAST:
+         case SPACE_PUNCTUATION_LAST:
 
-               case PUNCTUATION_FIRST_SPACE_LAST:
+            // punctuation/space come after letters
+            return -1;
 
-                  // order: punctuation, letter, space
+         case PUNCTUATION_FIRST_SPACE_LAST:
 
-                  if (other instanceof ComponentOther)
-                  {// other is punctuation
-                     return 1;
-                  }
-                  else
-                  {// other is space
-                     return -1;
-                  }
+            // order: punctuation, letter, space
 
-               case PUNCTUATION_FIRST_SPACE_ZERO:
-               case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
+            if (otherKind == KIND_OTHER)
+            {// other is punctuation
+               return 1;
+            }
+            else
+            {// other is space
+               return -1;
+            }
 
-                  // order: punctuation, letter, no space
+         case PUNCTUATION_FIRST_SPACE_ZERO:
+         case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
 
-                  return 1;
+            // order: punctuation, letter, no space
 
-               case SPACE_FIRST_PUNCTUATION_LAST:
+            return 1;
 
-                  // order: space, letter, punctuation
+         case SPACE_FIRST_PUNCTUATION_LAST:
 
-                  if (other instanceof ComponentSpace)
-                  {// other is space
-                     return 1;
-                  }
-                  else
-                  {// other is punctuation
-                     return -1;
-                  }
+            // order: space, letter, punctuation
 
-               case PUNCTUATION_LAST_SPACE_ZERO:
-               case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
+            if (otherKind == KIND_SPACE)
+            {// other is space
+               return 1;
+            }
+            else
+            {// other is punctuation
+               return -1;
+            }
 
-                  // order: letter, punctuation, no space
+         case PUNCTUATION_LAST_SPACE_ZERO:
+         case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
 
-                  return -1;
+            // order: letter, punctuation, no space
 
-               default:
-               // shouldn't happen but keep compiler happy
+            return -1;
 
-                 throw new IllegalArgumentException(
-                   "Invalid letter-number-punc setting: "+puncPosition);
-            }
-         }
+         default:
+         // shouldn't happen but keep compiler happy
 
-         return super.compareTo(other);
+           throw new IllegalArgumentException(
+             "Invalid letter-number-punc setting: "+puncPosition);
       }
    }
 
-   class ComponentSpace extends SortComponent
+   private int compareSpace(int value, int otherKind, int otherValue)
    {
-      public ComponentSpace(int codePoint)
-      {
-         super(codePoint);
+      if (otherKind == KIND_SPACE)
+      {// other is a space
+         return compareValues(value, otherValue);
       }
 
-      public int compareTo(SortComponent other)
-      {
-         if (other instanceof ComponentSpace)
-         {// other is a space
-            return super.compareTo(other);
-         }
-
-         if (other instanceof ComponentLetter)
-         {// other is a letter
-            switch (puncPosition)
-            {
-               case PUNCTUATION_SPACE_FIRST:
-               case SPACE_PUNCTUATION_FIRST:
-               case SPACE_FIRST_PUNCTUATION_LAST:
-               case PUNCTUATION_FIRST_SPACE_ZERO:
-               case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
+      if (otherKind == KIND_LETTER)
+      {// other is a letter
+         switch (puncPosition)
+         {
+            case PUNCTUATION_SPACE_FIRST:
+            case SPACE_PUNCTUATION_FIRST:
+            case SPACE_FIRST_PUNCTUATION_LAST:
+            case PUNCTUATION_FIRST_SPACE_ZERO:
+            case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
 
-                  return -1;
+               return -1;
 
-               case PUNCTUATION_SPACE_LAST:
-               case SPACE_PUNCTUATION_LAST:
-               case PUNCTUATION_FIRST_SPACE_LAST:
-               case PUNCTUATION_LAST_SPACE_ZERO:
-               case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
+            case PUNCTUATION_SPACE_LAST:
+            case SPACE_PUNCTUATION_LAST:
+            case PUNCTUATION_FIRST_SPACE_LAST:
+            case PUNCTUATION_LAST_SPACE_ZERO:
+            case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
 
-                  return 1;
+               return 1;
 
-               default:
-               // shouldn't happen but keep compiler happy
+            default:
+            // shouldn't happen but keep compiler happy
 
-                 throw new IllegalArgumentException(
-                   "Invalid letter-number-punc setting: "+puncPosition);
-            }
+              throw new IllegalArgumentException(
+                "Invalid letter-number-punc setting: "+puncPosition);
          }
+      }
 
-         if (other instanceof ComponentOther)
-         {// other is punctuation
+      if (otherKind == KIND_OTHER)
+      {// other is punctuation
 
-            switch (puncPosition)
-            {
-               case PUNCTUATION_SPACE_FIRST:
-               case PUNCTUATION_SPACE_LAST:
-               case PUNCTUATION_FIRST_SPACE_LAST:
-               case PUNCTUATION_FIRST_SPACE_ZERO:
-               case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
+         switch (puncPosition)
+         {
+            case PUNCTUATION_SPACE_FIRST:
+            case PUNCTUATION_SPACE_LAST:
+            case PUNCTUATION_FIRST_SPACE_LAST:
+            case PUNCTUATION_FIRST_SPACE_ZERO:
+            case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
 
-                  // punctuation before space
-                  return 1;
+               // punctuation before space
+               return 1;
 
-               case SPACE_PUNCTUATION_FIRST:
-               case SPACE_PUNCTUATION_LAST:
-               case SPACE_FIRST_PUNCTUATION_LAST:
-               case PUNCTUATION_LAST_SPACE_ZERO:
-               case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
+            case SPACE_PUNCTUATION_FIRST:
+            case SPACE_PUNCTUATION_LAST:
+            case SPACE_FIRST_PUNCTUATION_LAST:
+            case PUNCTUATION_LAST_SPACE_ZERO:
+            case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
 
-                  // space before punctuation
-                  return -1;
+               // space before punctuation
+               return -1;
 
-               default:
-               // shouldn't happen but keep compiler happy
+            default:
+            // shouldn't happen but keep compiler happy
 
-                 throw new IllegalArgumentException(
-                   "Invalid letter-number-punc setting: "+puncPosition);
-            }
+              throw new IllegalArgumentException(
+                "Invalid letter-number-punc setting: "+puncPosition);
          }
+      }
 
-         if (other instanceof ComponentNumber)
-         {// other is a number
-
-            switch (numberPosition)
-            {
-               case NUMBER_FIRST:
-                 return 1;
-               case NUMBER_LAST:
-                 return -1;
-            }
+      // other is a number
 
-            switch (puncPosition)
-            {
-               case SPACE_FIRST_PUNCTUATION_LAST:
-               case PUNCTUATION_SPACE_FIRST:
-               case SPACE_PUNCTUATION_FIRST:
-               case PUNCTUATION_FIRST_SPACE_ZERO:
-               case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
+      switch (numberPosition)
+      {
+         case NUMBER_FIRST:
+           return 1;
+         case NUMBER_LAST:
+           return -1;
+      }
 
-                  return -1;
+      switch (puncPosition)
+      {
+         case SPACE_FIRST_PUNCTUATION_LAST:
+         case PUNCTUATION_SPACE_FIRST:
+         case SPACE_PUNCTUATION_FIRST:
+         case PUNCTUATION_FIRST_SPACE_ZERO:
+         case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
 
-               case PUNCTUATION_FIRST_SPACE_LAST:
-               case PUNCTUATION_SPACE_LAST:
-               case SPACE_PUNCTUATION_LAST:
-               case PUNCTUATION_LAST_SPACE_ZERO:
-               case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
+            return -1;
 
-                  return 1;
+         case PUNCTUATION_FIRST_SPACE_LAST:
+         case PUNCTUATION_SPACE_LAST:
+         case SPACE_PUNCTUATION_LAST:
+         case PUNCTUATION_LAST_SPACE_ZERO:
+         case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
 
-               default:
-               // shouldn't happen but keep compiler happy
+            return 1;
 
-                 throw new IllegalArgumentException(
-                   "Invalid letter-number-punc setting: "+puncPosition);
-            }
-         }
+         default:
+         // shouldn't happen but keep compiler happy
 
-         return super.compareTo(other);
+           throw new IllegalArgumentException(
+             "Invalid letter-number-punc setting: "+puncPosition);
       }
    }
 
-   class ComponentOther extends SortComponent
+   private int compareOther(int value, int otherKind, int otherValue)
    {
-      public ComponentOther(int codePoint)
-      {
-         super(codePoint);
+      if (otherKind == KIND_OTHER)
+      {// other is punctuation
+         return compareValues(value, otherValue);
       }
 
-      public int compareTo(SortComponent other)
-      {
-         if (other instanceof ComponentOther)
-         {// other is punctuation
-            return super.compareTo(other);
-         }
-
-         if (other instanceof ComponentLetter)
-         {// other is a letter
-            switch (puncPosition)
-            {
-               case PUNCTUATION_SPACE_FIRST:
-               case SPACE_PUNCTUATION_FIRST:
-               case PUNCTUATION_FIRST_SPACE_LAST:
-               case PUNCTUATION_FIRST_SPACE_ZERO:
-               case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
+      if (otherKind == KIND_LETTER)
+      {// other is a letter
+         switch (puncPosition)
+         {
+            case PUNCTUATION_SPACE_FIRST:
+            case SPACE_PUNCTUATION_FIRST:
+            case PUNCTUATION_FIRST_SPACE_LAST:
+            case PUNCTUATION_FIRST_SPACE_ZERO:
+            case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
 
-                  return -1;
+               return -1;
 
-               case PUNCTUATION_SPACE_LAST:
-               case SPACE_PUNCTUATION_LAST:
-               case SPACE_FIRST_PUNCTUATION_LAST:
+            case PUNCTUATION_SPACE_LAST:
+            case SPACE_PUNCTUATION_LAST:
+            case SPACE_FIRST_PUNCTUATION_LAST:
 
-                  return 1;
+               return 1;
 
-               default:
-               // shouldn't happen but keep compiler happy
+            default:
+            // shouldn't happen but keep compiler happy
 
-                 throw new IllegalArgumentException(
-                   "Invalid letter-number-punc setting: "+puncPosition);
-            }
+              throw new IllegalArgumentException(
+                "Invalid letter-number-punc setting: "+puncPosition);
          }
+      }
 
-         if (other instanceof ComponentSpace)
-         {// other is white space
-            switch (puncPosition)
-            {
-               case PUNCTUATION_SPACE_FIRST:
-               case PUNCTUATION_SPACE_LAST:
-               case PUNCTUATION_FIRST_SPACE_LAST:
-               case PUNCTUATION_FIRST_SPACE_ZERO:
-               case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
+      if (otherKind == KIND_SPACE)
+      {// other is white space
+         switch (puncPosition)
+         {
+            case PUNCTUATION_SPACE_FIRST:
+            case PUNCTUATION_SPACE_LAST:
+            case PUNCTUATION_FIRST_SPACE_LAST:
+            case PUNCTUATION_FIRST_SPACE_ZERO:
+            case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
 
-                  // punctuation before space
-                  return -1;
+               // punctuation before space
+               return -1;
 
-               case SPACE_PUNCTUATION_FIRST:
-               case SPACE_PUNCTUATION_LAST:
-               case SPACE_FIRST_PUNCTUATION_LAST:
-               case PUNCTUATION_LAST_SPACE_ZERO:
-               case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
+            case SPACE_PUNCTUATION_FIRST:
+            case SPACE_PUNCTUATION_LAST:
+            case SPACE_FIRST_PUNCTUATION_LAST:
+            case PUNCTUATION_LAST_SPACE_ZERO:
+            case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
 
-                  // space before punctuation
-                  return 1;
+               // space before punctuation
+               return 1;
 
-               default:
-               // shouldn't happen but keep compiler happy
+            default:
+            // shouldn't happen but keep compiler happy
 
-                 throw new IllegalArgumentException(
-                   "Invalid letter-number-punc setting: "+puncPosition);
-            }
+              throw new IllegalArgumentException(
+                "Invalid letter-number-punc setting: "+puncPosition);
          }
+      }
 
-         if (other instanceof ComponentNumber)
-         {// other is a number
-
-            switch (numberPosition)
-            {
-               case NUMBER_FIRST:
-                 return 1;
-               case NUMBER_LAST:
-                 return -1;
-            }
+      // other is a number
 
-            switch (puncPosition)
-            {
-               case PUNCTUATION_FIRST_SPACE_LAST:
-               case PUNCTUATION_SPACE_FIRST:
-               case SPACE_PUNCTUATION_FIRST:
-               case PUNCTUATION_FIRST_SPACE_ZERO:
-               case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
+      switch (numberPosition)
+      {
+         case NUMBER_FIRST:
+           return 1;
+         case NUMBER_LAST:
+           return -1;
+      }
 
-                  return -1;
+      switch (puncPosition)
+      {
+         case PUNCTUATION_FIRST_SPACE_LAST:
+         case PUNCTUATION_SPACE_FIRST:
+         case SPACE_PUNCTUATION_FIRST:
+         case PUNCTUATION_FIRST_SPACE_ZERO:
+         case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
 
-               case SPACE_FIRST_PUNCTUATION_LAST:
-               case PUNCTUATION_SPACE_LAST:
-               case SPACE_PUNCTUATION_LAST:
-               case PUNCTUATION_LAST_SPACE_ZERO:
-               case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
+            return -1;
 
-                  return 1;
+         case SPACE_FIRST_PUNCTUATION_LAST:
+         case PUNCTUATION_SPACE_LAST:
+         case SPACE_PUNCTUATION_LAST:
+         case PUNCTUATION_LAST_SPACE_ZERO:
+         case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
 
-               default:
-               // shouldn't happen but keep compiler happy
+            return 1;
 
-                 throw new IllegalArgumentException(
-                   "Invalid letter-number-punc setting: "+puncPosition);
-            }
-         }
+         default:
+         // shouldn't happen but keep compiler happy
 
-         return super.compareTo(other);
+           throw new IllegalArgumentException(
+             "Invalid letter-number-punc setting: "+puncPosition);
       }
    }
 
-   class ComponentNumber extends SortComponent
+   private int compareNumber(int kind, int value, int otherKind,
+     int otherValue)
    {
-      public ComponentNumber(int value)
-      {
-         super(value);
+      if (isNumber(otherKind))
+      {// other is a number
+
+         if (kind != KIND_NUMBER)
+         {
+            if (kind == otherKind)
+            {
+               return 0;
+            }
+
+            // a missing number could represent 0 or 1
+            return otherValue <= 0 ? 1 : -1;
+         }
+
+         if (otherKind != KIND_NUMBER)
+         {
+            return value >= 0 ? 1 : -1;
+         }
+
+         return compareValues(value, otherValue);
       }
 
-      public ComponentNumber(Number num)
-      {
-         this(num.intValue());
+      if (otherKind == KIND_LETTER)
+      {// other is a letter
+         switch (numberPosition)
+         {
+            case NUMBER_FIRST:
+            case NUMBER_BEFORE_LETTER:
+              return -1;
+            case NUMBER_LAST:
+            case NUMBER_AFTER_LETTER:
+              return 1;
+            case NUMBER_BETWEEN:
+
+              boolean isUpper = Character.isUpperCase(otherValue)
+                 || Character.isTitleCase(otherValue);
+              boolean isLower = Character.isLowerCase(otherValue);
+
+              switch (caseStyle)
+              {
+                 case CASE:
+                 case UPPERLOWER:
+                   return isUpper ? 1 : -1;
+                 case TOLOWER:
+                   // numbers always before letters
+                   return -1;
+                 case LOWERUPPER:
+                   return isLower ? 1 : -1;
+                 default:
+                   // shouldn't happen
+                   throw new IllegalArgumentException(
+                     "Invalid case setting: "+caseStyle);
+              }
+
+            default:
+               // shouldn't happen
+
+              throw new IllegalArgumentException(
+                 "Invalid case setting: "+caseStyle);
+         }
       }
 
-      public String toString()
-      {
-         if (getValue() == Integer.MAX_VALUE || getValue() == Integer.MIN_VALUE)
+      if (otherKind == KIND_SPACE)
+      {// other is white space
+         switch (numberPosition)
          {
-            return super.toString();
+            case NUMBER_FIRST:
+              return -1;
+            case NUMBER_LAST:
+              return 1;
          }
-         else
+
+         switch (puncPosition)
          {
-            return ""+getValue();
+            case SPACE_FIRST_PUNCTUATION_LAST:
+            case PUNCTUATION_SPACE_FIRST:
+            case SPACE_PUNCTUATION_FIRST:
+            case PUNCTUATION_FIRST_SPACE_ZERO:
+            case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
+
+               return 1;
+
+            case PUNCTUATION_FIRST_SPACE_LAST:
+            case PUNCTUATION_SPACE_LAST:
+            case SPACE_PUNCTUATION_LAST:
+            case PUNCTUATION_LAST_SPACE_ZERO:
+            case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
+
+               return -1;
+
+            default:
+            // shouldn't happen but keep compiler happy
+
+              throw new IllegalArgumentException(
+                "Invalid letter-number-punc setting: "+puncPosition);
          }
       }
 
-      public int compareTo(SortComponent other)
+      // other is punctuation
+
+      switch (numberPosition)
       {
-         if (other instanceof ComponentNumber)
-         {// other is a number
+         case NUMBER_FIRST:
+           return -1;
+         case NUMBER_LAST:
+           return 1;
+      }
 
-            if (this == other)
-            {
-               return 0;
-            }
+      switch (puncPosition)
+      {
+         case PUNCTUATION_FIRST_SPACE_LAST:
+         case PUNCTUATION_SPACE_FIRST:
+         case SPACE_PUNCTUATION_FIRST:
+         case PUNCTUATION_FIRST_SPACE_ZERO:
+         case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
 
-            // a missing number could represent 0 or 1
-            if (this == MIN_COMPONENT || this == MAX_COMPONENT)
-            {
-               return other.getValue() <= 0 ? 1 : -1;
-            }
+            return 1;
 
-            if (other == MIN_COMPONENT || other == MAX_COMPONENT)
-            {
-               return getValue() >= 0 ? 1 : -1;
-            }
+         case SPACE_FIRST_PUNCTUATION_LAST:
+         case PUNCTUATION_SPACE_LAST:
+         case SPACE_PUNCTUATION_LAST:
+         case PUNCTUATION_LAST_SPACE_ZERO:
+         case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
 
-            return super.compareTo(other);
-         }
+            return -1;
 
-         if (other instanceof ComponentLetter)
-         {// other is a letter
-            switch (numberPosition)
-            {
-               case NUMBER_FIRST:
-               case NUMBER_BEFORE_LETTER:
-                 return -1;
-               case NUMBER_LAST:
-               case NUMBER_AFTER_LETTER:
-                 return 1;
-               case NUMBER_BETWEEN:
-
-                 boolean isUpper = Character.isUpperCase(other.getValue())
-                    || Character.isTitleCase(other.getValue());
-                 boolean isLower = Character.isLowerCase(other.getValue());
-
-                 switch (caseStyle)
-                 {
-                    case CASE:
-                    case UPPERLOWER:
-                      return isUpper ? 1 : -1;
-                    case TOLOWER:
-                      // numbers always before letters
-                      return -1;
-                    case LOWERUPPER:
-                      return isLower ? 1 : -1;
-                    default:
-                      // shouldn't happen
-                      throw new IllegalArgumentException(
-                        "Invalid case setting: "+caseStyle);
-                 }
-
-               default:
-                  // shouldn't happen
-
-                 throw new IllegalArgumentException(
-                    "Invalid case setting: "+caseStyle);
-            }
-         }
+         default:
+         // shouldn't happen but keep compiler happy
 
-         if (other instanceof ComponentSpace)
-         {// other is white space
-            switch (numberPosition)
-            {
-               case NUMBER_FIRST:
-                 return -1;
-               case NUMBER_LAST:
-                 return 1;
-            }
+           throw new IllegalArgumentException(
+             "Invalid letter-number-punc setting: "+puncPosition);
+      }
+   }
 
-            switch (puncPosition)
-            {
-               case SPACE_FIRST_PUNCTUATION_LAST:
-               case PUNCTUATION_SPACE_FIRST:
-               case SPACE_PUNCTUATION_FIRST:
-               case PUNCTUATION_FIRST_SPACE_ZERO:
-               case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
+   /**
+    * The components of a sort value. Each component has a kind
+    * (letter, space, other or number) and a value (the code point
+    * or the number), which are stored in parallel arrays.
+    */
+   class ComponentList
+   {
+      public ComponentList()
+      {
+         this(10);
+      }
 
-                  return 1;
+      public ComponentList(int capacity)
+      {
+         capacity = Math.max(capacity, 1);
 
-               case PUNCTUATION_FIRST_SPACE_LAST:
-               case PUNCTUATION_SPACE_LAST:
-               case SPACE_PUNCTUATION_LAST:
-               case PUNCTUATION_LAST_SPACE_ZERO:
-               case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
+         kinds = new byte[capacity];
+         values = new int[capacity];
+      }
 
-                  return -1;
+      public void add(int kind, int value)
+      {
+         if (size == values.length)
+         {
+            int capacity = 2*size;
 
-               default:
-               // shouldn't happen but keep compiler happy
+            byte[] newKinds = new byte[capacity];
+            int[] newValues = new int[capacity];
 
-                 throw new IllegalArgumentException(
-                   "Invalid letter-number-punc setting: "+puncPosition);
-            }
+            System.arraycopy(kinds, 0, newKinds, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+
+            kinds = newKinds;
+            values = newValues;
          }
 
-         if (other instanceof ComponentOther)
-         {// other is punctuation
-            switch (numberPosition)
-            {
-               case NUMBER_FIRST:
-                 return -1;
-               case NUMBER_LAST:
-                 return 1;
-            }
+         kinds[size] = (byte)kind;
+         values[size] = value;
+         size++;
+      }
 
-            switch (puncPosition)
-            {
-               case PUNCTUATION_FIRST_SPACE_LAST:
-               case PUNCTUATION_SPACE_FIRST:
-               case SPACE_PUNCTUATION_FIRST:
-               case PUNCTUATION_FIRST_SPACE_ZERO:
-               case PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT:
+      public int size()
+      {
+         return size;
+      }
 
-                  return 1;
+      public boolean isEmpty()
+      {
+         return size == 0;
+      }
 
-               case SPACE_FIRST_PUNCTUATION_LAST:
-               case PUNCTUATION_SPACE_LAST:
-               case SPACE_PUNCTUATION_LAST:
-               case PUNCTUATION_LAST_SPACE_ZERO:
-               case PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT:
+      public int getKind(int idx)
+      {
+         return kinds[idx];
+      }
+
+      public int getValue(int idx)
+      {
+         return values[idx];
+      }
+
+      public int getLastKind()
+      {
+         return kinds[size-1];
+      }
 
-                  return -1;
+      public String toString()
+      {
+         StringBuilder builder = new StringBuilder(size);
 
-               default:
-               // shouldn't happen but keep compiler happy
+         for (int i = 0; i < size; i++)
+         {
+            int value = values[i];
 
-                 throw new IllegalArgumentException(
-                   "Invalid letter-number-punc setting: "+puncPosition);
+            if (value == Integer.MIN_VALUE || value == Integer.MAX_VALUE
+                 || (value == 0 && !isNumber(kinds[i])))
+            {
+               if (bib2gls.isDebuggingOn())
+               {
+                  builder.append(value == 0 ? "" :
+                     (value < 0 ? "\u2199" : "\u2197"));
+               }
+            }
+            else if (isNumber(kinds[i]))
+            {
+               builder.append(value);
+            }
+            else
+            {
+               builder.appendCodePoint(value);
             }
          }
 
-         return super.compareTo(other);
+         return builder.toString();
       }
+
+      private byte[] kinds;
+      private int[] values;
+      private int size = 0;
    }
 
    public static final int NUMBER_BEFORE_LETTER=0;
@@ -1066,11 +1199,13 @@ public class Bib2GlsEntryLetterNumberComparator
    public static final int PUNCTUATION_FIRST_SPACE_ZERO_MATCH_NEXT=8;
    public static final int PUNCTUATION_LAST_SPACE_ZERO_MATCH_NEXT=9;
 
-   private final SortComponent NULL_COMPONENT = new ComponentLetter(0);
-   private final SortComponent MIN_COMPONENT 
-     = new ComponentNumber(Integer.MIN_VALUE);
-   private final SortComponent MAX_COMPONENT
-     = new ComponentNumber(Integer.MAX_VALUE);
+   private static final int KIND_LETTER=0;
+   private static final int KIND_SPACE=1;
+   private static final int KIND_OTHER=2;
+   private static final int KIND_NUMBER=3;
+   // missing number markers
+   private static final int KIND_MIN_NUMBER=4;
+   private static final int KIND_MAX_NUMBER=5;
 
    private int numberPosition, puncPosition;
 }
@@ -237,14 +237,68 @@ public class Bib2GlsEntryNumericComparator extends SortComparator
       return n1 < n2 ? -1 : 1;
    }
 
+   /**
+    * Converts each entry's numeric sort value into a primitive key.
+    * If all the values are integers, the key is the value itself.
+    * Otherwise the key is the bit pattern of the value as a double,
+    * adjusted so that the keys have the same order as the values.
+    */
+   @Override
+   protected void prepareSortKeys()
+   {
+      boolean integral = true;
+
+      for (Bib2GlsEntry entry : entries)
+      {
+         Number number = entry.getNumericSort();
+
+         if (!(number instanceof Integer || number instanceof Long
+               || number instanceof Short || number instanceof Byte))
+         {
+            integral = false;
+            break;
+         }
+      }
+
+      for (Bib2GlsEntry entry : entries)
+      {
+         Number number = entry.getNumericSort();
+
+         if (integral)
+         {
+            entry.setNumericSortKey(number.longValue());
+         }
+         else
+         {
+            entry.setNumericSortKey(getSortableBits(number.doubleValue()));
+         }
+      }
+   }
+
+   /*
+    * Negative values have the sign bit set, so the remaining bits
+    * are flipped to reverse their order. The result has the same
+    * order as Double.compare(double,double).
+    */
+   private static long getSortableBits(double value)
+   {
+      long bits = Double.doubleToLongBits(value);
+
+      return bits < 0 ? bits ^ Long.MAX_VALUE : bits;
+   }
+
    @Override
    protected int compareElements(Bib2GlsEntry entry1,
      Bib2GlsEntry entry2)
    {
-      Number val1 = entry1.getNumericSort();
-      Number val2 = entry2.getNumericSort();
+      return Long.compare(entry1.getNumericSortKey(),
+        entry2.getNumericSortKey());
+   }
 
-      return compare(val1, val2);
+   @Override
+   protected boolean supportsParallelSort()
+   {
+      return true;
    }
 
    private String sort, sortMethod;
@@ -19,8 +19,6 @@
 package com.dickimawbooks.bibgls.bib2gls;
 
 import java.util.Vector;
-import java.util.Iterator;
-import java.util.Set;
 
 import com.dickimawbooks.texparserlib.bib.BibValueList;
 import com.dickimawbooks.bibgls.common.Bib2GlsException;
@@ -47,23 +45,7 @@ public class Bib2GlsEntryRecordCountComparator extends Bib2GlsEntryNumericCompar
    {
       String id = entry.getId();
 
-      int total = 0;
-
-      Set<GlsRecord> keys = bib2gls.getRecordCountKeySet();
-
-      if (keys != null)
-      {
-         for (Iterator<GlsRecord> it = keys.iterator(); it.hasNext(); )
-         {
-            GlsRecord rec = it.next();
-
-            if (rec.getLabel().equals(id))
-            {
-               Integer count = bib2gls.getRecordCount(rec);
-               total += count;
-            }
-         }
-      }
+      int total = bib2gls.getRecordCountTotal(id);
 
       entry.setNumericSort(Integer.valueOf(total));
 
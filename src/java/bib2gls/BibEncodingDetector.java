@@ -0,0 +1,292 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package com.dickimawbooks.bibgls.bib2gls;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Searches a bib file for a line in the form
+ * <code>% Encoding: &lt;name&gt;</code>. The file is scanned as
+ * bytes, rather than decoded and matched line by line against a
+ * regular expression, since the encoding line only contains ASCII
+ * characters. The file is read in blocks (see {@link FileBlockInput})
+ * so only the part of the file that's actually scanned is read.
+ * The search stops at the first line that starts with "@" (ignoring
+ * leading white space), since the encoding line must come before
+ * the entries. JabRef writes this line at the start of the file, so
+ * typically only the first block is read. A line matches if it
+ * consists of "% Encoding: " followed by one or more non-whitespace
+ * characters. Lines may be terminated by LF, CR or CRLF. If the
+ * default encoding isn't ASCII-compatible (such as UTF-16), the file
+ * is decoded and searched line by line instead.
+ */
+public class BibEncodingDetector
+{
+   public BibEncodingDetector()
+   {
+      nameBuilder = new StringBuilder();
+   }
+
+   /**
+    * Scans the given file for the encoding line.
+    * @param file the bib file
+    * @param defaultCharset the encoding to assume when searching
+    * the file
+    * @return true if the encoding line was found
+    */
+   public boolean scan(File file, Charset defaultCharset) throws IOException
+   {
+      encoding = null;
+      lineNum = 0;
+
+      currentLine = 1;
+      matchPos = 0;
+      skipLF = false;
+      lineStart = true;
+      finished = false;
+      nameBuilder.setLength(0);
+
+      if (!isASCIICompatible(defaultCharset))
+      {
+         return scanDecoded(file, defaultCharset);
+      }
+
+      FileBlockInput in = new FileBlockInput(file);
+
+      try
+      {
+         ByteBuffer buffer;
+
+         while (!finished && (buffer = in.nextBlock()) != null)
+         {
+            if (scan(buffer))
+            {
+               return true;
+            }
+         }
+
+         return !finished && endOfInput();
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   /*
+    * Searches the decoded lines of the file. This is only used if
+    * the bytes that make up the encoding line aren't the same as
+    * in ASCII.
+    */
+   private boolean scanDecoded(File file, Charset charset)
+     throws IOException
+   {
+      BufferedReader reader = null;
+
+      try
+      {
+         reader = Files.newBufferedReader(file.toPath(), charset);
+
+         String line;
+
+         while ((line = reader.readLine()) != null)
+         {
+            if (line.trim().startsWith("@"))
+            {
+               break;
+            }
+
+            if (line.startsWith(PREFIX_STRING)
+                 && line.length() > PREFIX_STRING.length()
+                 && line.length() - PREFIX_STRING.length() <= MAX_NAME_LENGTH)
+            {
+               String name = line.substring(PREFIX_STRING.length());
+
+               if (!name.matches(".*\\s.*"))
+               {
+                  encoding = name;
+                  lineNum = currentLine;
+                  return true;
+               }
+            }
+
+            currentLine++;
+         }
+      }
+      finally
+      {
+         if (reader != null)
+         {
+            reader.close();
+         }
+      }
+
+      return false;
+   }
+
+   /*
+    * Determines whether or not the characters used by the search
+    * are encoded as the same bytes as in ASCII.
+    */
+   private static boolean isASCIICompatible(Charset charset)
+   {
+      String chars = PREFIX_STRING+"@ \t\n\r";
+
+      return Arrays.equals(chars.getBytes(charset), chars.getBytes(ASCII));
+   }
+
+   /**
+    * Scans the remaining bytes in the given buffer. The buffer may
+    * be part of a file, in which case this method should be called
+    * for each block in turn followed by {@link #endOfInput()}.
+    * @return true if the encoding line was found
+    */
+   public boolean scan(ByteBuffer buffer)
+   {
+      while (!finished && buffer.hasRemaining())
+      {
+         byte b = buffer.get();
+
+         if (b == '\n' || b == '\r')
+         {
+            if (b == '\n' && skipLF)
+            {
+               skipLF = false;
+               continue;
+            }
+
+            if (endOfLine())
+            {
+               return true;
+            }
+
+            skipLF = (b == '\r');
+            lineStart = true;
+            currentLine++;
+            continue;
+         }
+
+         skipLF = false;
+
+         if (lineStart)
+         {
+            if (b == '@')
+            {
+               // start of the first entry
+
+               finished = true;
+               break;
+            }
+
+            lineStart = (b == ' ' || b == '\t' || b == 0x0B || b == '\f');
+         }
+
+         if (matchPos == -1)
+         {
+            continue;
+         }
+
+         if (matchPos < PREFIX.length)
+         {
+            if (b == PREFIX[matchPos])
+            {
+               matchPos++;
+            }
+            else
+            {
+               matchPos = -1;
+            }
+         }
+         else if (b == ' ' || b == '\t' || b == 0x0B || b == '\f'
+                   || nameBuilder.length() >= MAX_NAME_LENGTH)
+         {
+            matchPos = -1;
+         }
+         else
+         {
+            nameBuilder.append((char)(b & 0xFF));
+         }
+      }
+
+      return false;
+   }
+
+   /**
+    * Checks the final line, which may not have a line terminator.
+    * @return true if the encoding line was found
+    */
+   public boolean endOfInput()
+   {
+      return !finished && endOfLine();
+   }
+
+   private boolean endOfLine()
+   {
+      if (matchPos == PREFIX.length && nameBuilder.length() > 0)
+      {
+         encoding = nameBuilder.toString();
+         lineNum = currentLine;
+         return true;
+      }
+
+      matchPos = 0;
+      nameBuilder.setLength(0);
+
+      return false;
+   }
+
+   /**
+    * Gets the encoding name found by the most recent scan.
+    * @return the encoding name or null if not found
+    */
+   public String getEncoding()
+   {
+      return encoding;
+   }
+
+   /**
+    * Gets the line number of the encoding line found by the most
+    * recent scan or 0 if not found.
+    */
+   public int getLineNumber()
+   {
+      return lineNum;
+   }
+
+   private String encoding;
+   private int lineNum;
+
+   private int currentLine, matchPos;
+   private boolean skipLF, lineStart, finished;
+   private StringBuilder nameBuilder;
+
+   private static final String PREFIX_STRING = "% Encoding: ";
+
+   private static final Charset ASCII = Charset.forName("US-ASCII");
+
+   private static final byte[] PREFIX = PREFIX_STRING.getBytes(ASCII);
+
+   private static final int MAX_NAME_LENGTH = 256;
+}
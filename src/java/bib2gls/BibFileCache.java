@@ -0,0 +1,521 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package com.dickimawbooks.bibgls.bib2gls;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Information used by --incremental that's carried over from one
+ * run to the next. Each input file is identified by the SHA-256
+ * digest of its content. The file size and modification time are
+ * used to avoid recomputing the digest if the file hasn't been
+ * touched. The cache also stores the state of each resource set
+ * (see {@link IncrementalResourceState}) and the digest of the
+ * .glstex file it wrote, so that a resource set that isn't affected
+ * by any changes can be skipped, and the index of bib files found
+ * in the TeX distribution's ls-R databases (see
+ * {@link KpathseaIndex}). The cache is saved in the
+ * file <code>&lt;jobname&gt;.bib2gls-cache</code>.
+ */
+public class BibFileCache
+{
+   public BibFileCache(Bib2Gls bib2gls, File cacheFile)
+   {
+      this.bib2gls = bib2gls;
+      this.cacheFile = cacheFile;
+      entries = new HashMap<String,CacheEntry>();
+      outputs = new HashMap<String,String>();
+      resources = new HashMap<String,IncrementalResourceState>();
+   }
+
+   public File getFile()
+   {
+      return cacheFile;
+   }
+
+   /**
+    * Reads the cache file, if it exists. Any invalid lines are
+    * ignored, as are any lines if the cache file has a different
+    * version.
+    */
+   public synchronized void read() throws IOException
+   {
+      if (!cacheFile.exists())
+      {
+         return;
+      }
+
+      BufferedReader reader = null;
+
+      try
+      {
+         reader = bib2gls.createBufferedReader(cacheFile.toPath(), CHARSET);
+
+         String line = reader.readLine();
+
+         if (line == null || !line.equals(HEADER))
+         {
+            bib2gls.debugMessage("message.bib.cache.ignored", cacheFile);
+            return;
+         }
+
+         while ((line = reader.readLine()) != null)
+         {
+            String[] split = line.split("\t", -1);
+
+            if (split[0].equals("file") && split.length == 6)
+            {
+               try
+               {
+                  CacheEntry entry = new CacheEntry(Long.parseLong(split[2]),
+                    Long.parseLong(split[3]), split[4],
+                    Long.parseLong(split[5]));
+
+                  entries.put(split[1], entry);
+               }
+               catch (NumberFormatException e)
+               {
+                  bib2gls.debug(e);
+               }
+            }
+            else if (split[0].equals("output") && split.length == 3)
+            {
+               outputs.put(split[1], split[2]);
+            }
+            else if (split[0].equals("resource") && split.length == 5)
+            {
+               try
+               {
+                  resources.put(split[1], new IncrementalResourceState(
+                    split[2], split[3], Integer.parseInt(split[4])));
+               }
+               catch (NumberFormatException e)
+               {
+                  bib2gls.debug(e);
+               }
+            }
+            else if (split[0].equals("label") && split.length == 3)
+            {
+               IncrementalResourceState state = resources.get(split[1]);
+
+               if (state != null)
+               {
+                  state.getLabels().add(split[2]);
+               }
+            }
+            else if (split[0].equals("effect") && split.length >= 5)
+            {
+               IncrementalResourceState state = resources.get(split[1]);
+
+               if (state != null)
+               {
+                  // the value may contain tabs
+
+                  state.getEffects().add(line.substring(
+                    split[0].length()+split[1].length()+2));
+               }
+            }
+            else if (split[0].equals("kpsedb") && split.length == 2)
+            {
+               kpathseaFingerprint = split[1];
+               kpathseaIndex = new HashMap<String,Vector<String>>();
+            }
+            else if (split[0].equals("kpsebib") && split.length == 3
+                       && kpathseaIndex != null)
+            {
+               Vector<String> dirs = kpathseaIndex.get(split[1]);
+
+               if (dirs == null)
+               {
+                  dirs = new Vector<String>();
+                  kpathseaIndex.put(split[1], dirs);
+               }
+
+               dirs.add(split[2]);
+            }
+         }
+      }
+      finally
+      {
+         if (reader != null)
+         {
+            reader.close();
+         }
+      }
+
+      bib2gls.verboseMessage("message.bib.cache.read", cacheFile,
+        entries.size());
+   }
+
+   /**
+    * Saves the cache if it has been modified.
+    */
+   public synchronized void write() throws IOException
+   {
+      if (!modified)
+      {
+         return;
+      }
+
+      bib2gls.verboseMessage("message.writing", cacheFile);
+
+      PrintWriter writer = null;
+
+      try
+      {
+         writer = new PrintWriter(bib2gls.createBufferedWriter(
+            cacheFile.toPath(), CHARSET));
+
+         writer.println(HEADER);
+
+         if (kpathseaFingerprint != null)
+         {
+            writer.print("kpsedb\t");
+            writer.println(kpathseaFingerprint);
+
+            for (Map.Entry<String,Vector<String>> mapEntry
+                   : kpathseaIndex.entrySet())
+            {
+               for (String dir : mapEntry.getValue())
+               {
+                  writer.print("kpsebib\t");
+                  writer.print(mapEntry.getKey());
+                  writer.print('\t');
+                  writer.println(dir);
+               }
+            }
+         }
+
+         for (Map.Entry<String,CacheEntry> mapEntry : entries.entrySet())
+         {
+            CacheEntry entry = mapEntry.getValue();
+
+            writer.print("file\t");
+            writer.print(mapEntry.getKey());
+            writer.print('\t');
+            writer.print(entry.length);
+            writer.print('\t');
+            writer.print(entry.lastModified);
+            writer.print('\t');
+            writer.print(entry.digest);
+            writer.print('\t');
+            writer.println(entry.checked);
+         }
+
+         for (Map.Entry<String,String> mapEntry : outputs.entrySet())
+         {
+            writer.print("output\t");
+            writer.print(mapEntry.getKey());
+            writer.print('\t');
+            writer.println(mapEntry.getValue());
+         }
+
+         for (Map.Entry<String,IncrementalResourceState> mapEntry
+                : resources.entrySet())
+         {
+            String key = mapEntry.getKey();
+            IncrementalResourceState state = mapEntry.getValue();
+
+            writer.print("resource\t");
+            writer.print(key);
+            writer.print('\t');
+            writer.print(state.getInputFingerprint());
+            writer.print('\t');
+            writer.print(state.getStateFingerprint());
+            writer.print('\t');
+            writer.println(state.getCount());
+
+            for (String label : state.getLabels())
+            {
+               writer.print("label\t");
+               writer.print(key);
+               writer.print('\t');
+               writer.println(label);
+            }
+
+            for (String effect : state.getEffects())
+            {
+               writer.print("effect\t");
+               writer.print(key);
+               writer.print('\t');
+               writer.println(effect);
+            }
+         }
+      }
+      finally
+      {
+         if (writer != null)
+         {
+            writer.close();
+         }
+      }
+
+      modified = false;
+   }
+
+   /**
+    * Gets the SHA-256 digest (as a hexadecimal string) of the
+    * given file's content.
+    */
+   public synchronized String getDigest(File file) throws IOException
+   {
+      return getEntry(file).digest;
+   }
+
+   /**
+    * Gets the state of the resource set that wrote the given
+    * .glstex file in the previous run.
+    * @return the state or null if not available
+    */
+   public synchronized IncrementalResourceState getResourceState(
+     File texFile)
+   {
+      return resources.get(getKey(texFile));
+   }
+
+   /**
+    * Clears the information about the resource sets and the files
+    * they wrote in the previous run.
+    */
+   public synchronized void clearResourceStates()
+   {
+      resources.clear();
+      outputs.clear();
+      modified = true;
+   }
+
+   /**
+    * Saves the state of the resource set that wrote the given
+    * .glstex file in this run, along with the digest of the file.
+    */
+   public synchronized void setResourceState(File texFile,
+     IncrementalResourceState state)
+     throws IOException
+   {
+      String key = getKey(texFile);
+
+      resources.put(key, state);
+      outputs.put(key, getDigest(texFile));
+      modified = true;
+   }
+
+   /**
+    * Determines whether or not the given file is the same as the
+    * file written by the previous run.
+    * @return true if the file exists and its digest matches the
+    * digest saved by the previous run
+    */
+   public synchronized boolean isUnchangedOutput(File file)
+     throws IOException
+   {
+      String digest = outputs.get(getKey(file));
+
+      return digest != null && file.exists() && digest.equals(getDigest(file));
+   }
+
+   /**
+    * Gets the index of bib files from the ls-R databases saved by
+    * a previous run.
+    * @param fingerprint the fingerprint of the current ls-R
+    * databases
+    * @return the map of file names to the directories containing
+    * them or null if not available or the databases have changed
+    */
+   public synchronized HashMap<String,Vector<String>> getKpathseaIndex(
+      String fingerprint)
+   {
+      if (kpathseaFingerprint == null
+           || !kpathseaFingerprint.equals(fingerprint))
+      {
+         return null;
+      }
+
+      return kpathseaIndex;
+   }
+
+   /**
+    * Saves the index of bib files from the ls-R databases.
+    * @param fingerprint the fingerprint of the ls-R databases
+    * @param index the map of file names to the directories
+    * containing them
+    */
+   public synchronized void setKpathseaIndex(String fingerprint,
+     HashMap<String,Vector<String>> index)
+   {
+      kpathseaFingerprint = fingerprint;
+      kpathseaIndex = index;
+      modified = true;
+   }
+
+   private String getKey(File file)
+   {
+      return file.getAbsoluteFile().toPath().normalize().toString();
+   }
+
+   private CacheEntry getEntry(File file) throws IOException
+   {
+      String key = getKey(file);
+
+      long length = file.length();
+      long lastModified = file.lastModified();
+
+      CacheEntry entry = entries.get(key);
+
+      if (entry != null && entry.length == length
+           && entry.lastModified == lastModified
+           && (entry.verified
+               || entry.checked - lastModified > MTIME_GRANULARITY))
+      {
+         return entry;
+      }
+
+      // The stored digest can only be trusted if the file's
+      // modification time is older than the time the digest was
+      // computed by more than the timestamp granularity. Otherwise
+      // the file may have been changed again within the same tick
+      // without altering its length or timestamp.
+
+      String digest = computeDigest(file);
+      long checked = System.currentTimeMillis();
+
+      if (entry != null && entry.digest.equals(digest))
+      {
+         // file touched but content unchanged
+
+         entry.length = length;
+         entry.lastModified = lastModified;
+         entry.checked = checked;
+      }
+      else
+      {
+         entry = new CacheEntry(length, lastModified, digest, checked);
+         entries.put(key, entry);
+      }
+
+      entry.verified = true;
+
+      modified = true;
+
+      return entry;
+   }
+
+   private String computeDigest(File file) throws IOException
+   {
+      MessageDigest md = createMessageDigest();
+
+      FileBlockInput in = new FileBlockInput(file);
+
+      try
+      {
+         ByteBuffer buffer;
+
+         while ((buffer = in.nextBlock()) != null)
+         {
+            md.update(buffer);
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+
+      return toHex(md.digest());
+   }
+
+   /**
+    * Gets the SHA-256 digest (as a hexadecimal string) of the
+    * given text.
+    */
+   public static String computeDigest(String text)
+     throws IOException
+   {
+      return toHex(createMessageDigest().digest(text.getBytes(CHARSET)));
+   }
+
+   private static MessageDigest createMessageDigest() throws IOException
+   {
+      try
+      {
+         return MessageDigest.getInstance("SHA-256");
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         throw new IOException(e);
+      }
+   }
+
+   private static String toHex(byte[] bytes)
+   {
+      StringBuilder builder = new StringBuilder(2*bytes.length);
+
+      for (byte b : bytes)
+      {
+         builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+         builder.append(Character.forDigit(b & 0xF, 16));
+      }
+
+      return builder.toString();
+   }
+
+   private static class CacheEntry
+   {
+      CacheEntry(long length, long lastModified, String digest,
+        long checked)
+      {
+         this.length = length;
+         this.lastModified = lastModified;
+         this.digest = digest;
+         this.checked = checked;
+      }
+
+      long length, lastModified;
+      String digest;
+
+      // time at which the digest was computed or confirmed
+      long checked;
+
+      // true if the digest was computed during this run
+      boolean verified = false;
+   }
+
+   private Bib2Gls bib2gls;
+   private File cacheFile;
+   private HashMap<String,CacheEntry> entries;
+   private HashMap<String,String> outputs;
+   private HashMap<String,IncrementalResourceState> resources;
+   private String kpathseaFingerprint = null;
+   private HashMap<String,Vector<String>> kpathseaIndex = null;
+   private boolean modified = false;
+
+   public static final String EXTENSION = ".bib2gls-cache";
+
+   private static final String HEADER = "bib2gls-cache 5";
+
+   // coarsest file timestamp resolution (FAT) in milliseconds
+   private static final long MTIME_GRANULARITY = 2000L;
+
+   private static final Charset CHARSET = Charset.forName("UTF-8");
+}
@@ -51,6 +51,8 @@ public abstract class EntryFieldCommand extends Command
 
          // Try other resource sets, if there are any
 
+         bib2gls.searchingOtherResources();
+
          for (GlsResource resource : bib2gls.getResources())
          {
             if (resource != currentResource)
@@ -0,0 +1,77 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package com.dickimawbooks.bibgls.bib2gls;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Provides the content of a file as a sequence of byte blocks for
+ * code that only needs to scan the raw bytes (such as computing a
+ * digest or searching for ASCII markers). Each block is read into
+ * the same buffer, so the content of a block is only valid until
+ * the next block is requested. The file isn't memory mapped, as a
+ * mapping can't be released on demand and, on some platforms,
+ * prevents the file from being overwritten for as long as it
+ * remains (which is a problem for the .glstex files).
+ */
+public class FileBlockInput
+{
+   public FileBlockInput(File file) throws IOException
+   {
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      buffer = ByteBuffer.allocate(BLOCK_SIZE);
+   }
+
+   /**
+    * Gets the next block of the file.
+    * @return the buffer containing the next block (with the
+    * position at the start of the block) or null if the end of the
+    * file has been reached
+    */
+   public ByteBuffer nextBlock() throws IOException
+   {
+      buffer.clear();
+
+      while (buffer.hasRemaining())
+      {
+         if (channel.read(buffer) == -1)
+         {
+            break;
+         }
+      }
+
+      buffer.flip();
+
+      return buffer.hasRemaining() ? buffer : null;
+   }
+
+   public void close() throws IOException
+   {
+      channel.close();
+   }
+
+   private FileChannel channel;
+   private ByteBuffer buffer;
+
+   private static final int BLOCK_SIZE = 65536;
+}
@@ -0,0 +1,607 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package com.dickimawbooks.bibgls.bib2gls;
+
+import java.util.regex.Matcher;
+
+/**
+ * Parsed form of a record location used to test whether
+ * locations are consecutive or ordered. Each location pattern is
+ * only matched once (when first required) and the result is kept,
+ * so comparing adjacent records in a location list doesn't
+ * repeatedly apply the same regular expressions. The prefix
+ * (and prefix with separator) of a location is parsed in the same
+ * way when required.
+ */
+public class GlsLocationKey
+{
+   public GlsLocationKey(String location)
+   {
+      this.location = location;
+   }
+
+   public String getLocation()
+   {
+      return location;
+   }
+
+   // is key2 one more than key1?
+   public static boolean consecutive(GlsLocationKey key1,
+     GlsLocationKey key2, int gap, int[] maxGap)
+   {
+      if (key1.location.isEmpty() || key2.location.isEmpty())
+      {
+         return false;
+      }
+
+      Part p1 = key1.getPart(TYPE_WRGLOSSARY);
+      Part p2 = p1 == null ? null : key2.getPart(TYPE_WRGLOSSARY);
+
+      if (p2 != null)
+      {
+         if (p1.value.equals(p2.value))
+         {
+            return false;
+         }
+
+         return consecutive(p1.getValueKey(), p2.getValueKey(), gap, maxGap);
+      }
+
+      p1 = key1.getPart(TYPE_CS);
+      p2 = p1 == null ? null : key2.getPart(TYPE_CS);
+
+      if (p2 != null)
+      {
+         if (!p1.cs.equals(p2.cs))
+         {
+            return false;
+         }
+
+         if (p1.value.equals(p2.value))
+         {
+            return consecutive(p1.getPrefixKey(), p2.getPrefixKey(),
+              gap, maxGap);
+         }
+
+         return consecutive(p1.getValueKey(), p2.getValueKey(), gap, maxGap);
+      }
+
+      p1 = key1.getPart(TYPE_DIGIT);
+      p2 = p1 == null ? null : key2.getPart(TYPE_DIGIT);
+
+      if (p2 != null)
+      {
+         if (p1.value.equals(p2.value))
+         {
+            if (p1.value.equals("0"))
+            {
+               return consecutivePrefixes(p1, p2, gap, maxGap);
+            }
+            else
+            {
+               return false;
+            }
+         }
+
+         if (!p1.prefix.equals(p2.prefix) || !p1.separator.equals(p2.separator)
+              || !p1.hasNumber || !p2.hasNumber)
+         {
+            return false;
+         }
+
+         return isWithinGap(p1.number, p2.number, gap, maxGap);
+      }
+
+      for (int type = TYPE_ROMAN_LC; type <= TYPE_ROMAN_UC; type++)
+      {
+         p1 = key1.getPart(type);
+         p2 = p1 == null ? null : key2.getPart(type);
+
+         if (p2 != null)
+         {
+            if (p1.number == p2.number)
+            {
+               return consecutivePrefixes(p1, p2, gap, maxGap);
+            }
+
+            if (!p1.prefix.equals(p2.prefix)
+                 || !p1.separator.equals(p2.separator))
+            {
+               return false;
+            }
+
+            return isWithinGap(p1.number, p2.number, gap, maxGap);
+         }
+      }
+
+      p1 = key1.getPart(TYPE_ALPHA);
+      p2 = p1 == null ? null : key2.getPart(TYPE_ALPHA);
+
+      if (p2 != null)
+      {
+         if (p1.value.equals(p2.value))
+         {
+            return consecutivePrefixes(p1, p2, gap, maxGap);
+         }
+
+         if (!p1.prefix.equals(p2.prefix) || !p1.separator.equals(p2.separator))
+         {
+            return false;
+         }
+
+         return isWithinGap(p1.number, p2.number, gap, maxGap);
+      }
+
+      return false;
+   }
+
+   private static boolean consecutivePrefixes(Part p1, Part p2,
+     int gap, int[] maxGap)
+   {
+      return p1.separator.equals(p2.separator) ?
+             consecutive(p1.getPrefixKey(), p2.getPrefixKey(), gap, maxGap) :
+             consecutive(p1.getPrefixSepKey(), p2.getPrefixSepKey(),
+               gap, maxGap);
+   }
+
+   private static boolean isWithinGap(int n1, int n2, int gap, int[] maxGap)
+   {
+      int diff = n2 - n1;
+
+      if (0 < diff && diff <= gap)
+      {
+         if (diff > maxGap[0])
+         {
+            maxGap[0] = diff;
+         }
+
+         return true;
+      }
+
+      return false;
+   }
+
+   // is key1 < key2?
+   public static boolean lessThan(GlsLocationKey key1, GlsLocationKey key2)
+   {
+      if (key1.location.isEmpty() || key2.location.isEmpty())
+      {
+         return false;
+      }
+
+      Part p1 = key1.getPart(TYPE_CS);
+      Part p2 = p1 == null ? null : key2.getPart(TYPE_CS);
+
+      if (p2 != null)
+      {
+         if (!p1.cs.equals(p2.cs))
+         {
+            return false;
+         }
+
+         if (p1.value.equals(p2.value))
+         {
+            return lessThan(p1.getPrefixKey(), p2.getPrefixKey());
+         }
+
+         return lessThan(p1.getValueKey(), p2.getValueKey());
+      }
+
+      p1 = key1.getPart(TYPE_DIGIT);
+      p2 = p1 == null ? null : key2.getPart(TYPE_DIGIT);
+
+      if (p2 != null)
+      {
+         if (p1.value.equals(p2.value))
+         {
+            if (p1.value.equals("0"))
+            {
+               return lessThanPrefixes(p1, p2);
+            }
+            else
+            {
+               return false;
+            }
+         }
+
+         if (!p1.prefix.equals(p2.prefix) || !p1.separator.equals(p2.separator)
+              || !p1.hasNumber || !p2.hasNumber)
+         {
+            return false;
+         }
+
+         return p1.number < p2.number;
+      }
+
+      for (int type = TYPE_ROMAN_LC; type <= TYPE_ROMAN_UC; type++)
+      {
+         p1 = key1.getPart(type);
+         p2 = p1 == null ? null : key2.getPart(type);
+
+         if (p2 != null)
+         {
+            if (p1.number == p2.number)
+            {
+               return lessThanPrefixes(p1, p2);
+            }
+
+            if (!p1.prefix.equals(p2.prefix)
+                 || !p1.separator.equals(p2.separator))
+            {
+               return false;
+            }
+
+            return p1.number < p2.number;
+         }
+      }
+
+      p1 = key1.getPart(TYPE_ALPHA);
+      p2 = p1 == null ? null : key2.getPart(TYPE_ALPHA);
+
+      if (p2 != null)
+      {
+         if (p1.value.equals(p2.value))
+         {
+            return lessThanPrefixes(p1, p2);
+         }
+
+         if (!p1.prefix.equals(p2.prefix) || !p1.separator.equals(p2.separator))
+         {
+            return false;
+         }
+
+         return p1.number < p2.number;
+      }
+
+      return false;
+   }
+
+   private static boolean lessThanPrefixes(Part p1, Part p2)
+   {
+      return p1.separator.equals(p2.separator) ?
+             lessThan(p1.getPrefixKey(), p2.getPrefixKey()) :
+             lessThan(p1.getPrefixSepKey(), p2.getPrefixSepKey());
+   }
+
+   /**
+    * Gets the result of matching the location against the given
+    * type of pattern.
+    * @return the matched part or null if the location doesn't
+    * match
+    */
+   private Part getPart(int type)
+   {
+      int flag = 1 << type;
+
+      if ((parsedTypes & flag) == 0)
+      {
+         parts[type] = parse(type);
+         parsedTypes |= flag;
+      }
+
+      return parts[type];
+   }
+
+   private Part parse(int type)
+   {
+      Matcher m;
+      Part part;
+
+      switch (type)
+      {
+         case TYPE_WRGLOSSARY:
+
+            m = GlsRecord.WRGLOSSARY_PATTERN.matcher(location);
+
+            if (!m.matches()) return null;
+
+            part = new Part();
+            part.value = m.group(2);
+
+            return part;
+
+         case TYPE_CS:
+
+            m = GlsRecord.CS_PATTERN.matcher(location);
+
+            if (!m.matches()) return null;
+
+            part = new Part();
+            part.prefix = m.group(1);
+            part.cs = m.group(2);
+            part.value = m.group(3);
+
+            return part;
+
+         case TYPE_DIGIT:
+
+            m = GlsRecord.DIGIT_PATTERN.matcher(location);
+
+            if (!m.matches()) return null;
+
+            part = new Part();
+            part.prefix = m.group(1) == null ? "" : m.group(1);
+            part.separator = m.group(2);
+            part.value = m.group(3);
+
+            try
+            {
+               part.number = Integer.parseInt(part.value);
+               part.hasNumber = true;
+            }
+            catch (NumberFormatException e)
+            {// too large
+               part.hasNumber = false;
+            }
+
+            return part;
+
+         case TYPE_ROMAN_LC:
+         case TYPE_ROMAN_UC:
+
+            m = (type == TYPE_ROMAN_LC ? GlsRecord.ROMAN_LC_PATTERN
+                  : GlsRecord.ROMAN_UC_PATTERN).matcher(location);
+
+            if (!m.matches()
+                 || (   m.group(3).isEmpty()
+                     && m.group(4) == null
+                     && m.group(5) == null
+                     && m.group(6) == null
+                    )
+               )
+            {
+               return null;
+            }
+
+            part = new Part();
+            part.prefix = m.group(1);
+            part.separator = m.group(2);
+
+            if (type == TYPE_ROMAN_LC)
+            {
+               part.number = romanToDecimal(m.group(3), m.group(4),
+                 m.group(5), m.group(6));
+            }
+            else
+            {
+               String hundreds = m.group(4);
+               String tens = m.group(5);
+               String ones = m.group(6);
+
+               part.number = romanToDecimal(m.group(3).toLowerCase(),
+                  hundreds == null ? null : hundreds.toLowerCase(),
+                  tens == null ? null : tens.toLowerCase(),
+                  ones == null ? null : ones.toLowerCase());
+            }
+
+            part.hasNumber = true;
+
+            return part;
+
+         case TYPE_ALPHA:
+
+            m = GlsRecord.ALPHA_PATTERN.matcher(location);
+
+            if (!m.matches()) return null;
+
+            part = new Part();
+            part.prefix = m.group(1) == null ? "" : m.group(1);
+            part.separator = m.group(2);
+            part.value = m.group(3);
+
+            if (part.value == null)
+            {
+               part.separator = m.group(4);
+               part.value = m.group(5);
+            }
+
+            part.number = part.value.codePointAt(0);
+            part.hasNumber = true;
+
+            return part;
+      }
+
+      throw new IllegalArgumentException("Invalid location type: "+type);
+   }
+
+   // arguments should already have been checked against the pattern
+   static int romanToDecimal(String thousands, String hundreds,
+     String tens, String ones)
+   {
+      int n = 0;
+
+      if (thousands != null && !thousands.isEmpty())
+      {
+         n = 1000*thousands.length();
+      }
+
+      if ("c".equals(hundreds))
+      {
+         n += 100;
+      }
+      else if ("cc".equals(hundreds))
+      {
+         n += 200;
+      }
+      else if ("ccc".equals(hundreds))
+      {
+         n += 300;
+      }
+      else if ("cd".equals(hundreds))
+      {
+         n += 400;
+      }
+      else if ("d".equals(hundreds))
+      {
+         n += 500;
+      }
+      else if ("dc".equals(hundreds))
+      {
+         n += 600;
+      }
+      else if ("dcc".equals(hundreds))
+      {
+         n += 700;
+      }
+      else if ("dccc".equals(hundreds))
+      {
+         n += 800;
+      }
+      else if ("cm".equals(hundreds))
+      {
+         n += 900;
+      }
+
+      if ("x".equals(tens))
+      {
+         n += 10;
+      }
+      else if ("xx".equals(tens))
+      {
+         n += 20;
+      }
+      else if ("xxx".equals(tens))
+      {
+         n += 30;
+      }
+      else if ("xl".equals(tens))
+      {
+         n += 40;
+      }
+      else if ("l".equals(tens))
+      {
+         n += 50;
+      }
+      else if ("lx".equals(tens))
+      {
+         n += 60;
+      }
+      else if ("lxx".equals(tens))
+      {
+         n += 70;
+      }
+      else if ("lxxx".equals(tens))
+      {
+         n += 80;
+      }
+      else if ("xc".equals(tens))
+      {
+         n += 90;
+      }
+
+      if ("i".equals(ones))
+      {
+         n += 1;
+      }
+      else if ("ii".equals(ones))
+      {
+         n += 2;
+      }
+      else if ("iii".equals(ones))
+      {
+         n += 3;
+      }
+      else if ("iv".equals(ones))
+      {
+         n += 4;
+      }
+      else if ("v".equals(ones))
+      {
+         n += 5;
+      }
+      else if ("vi".equals(ones))
+      {
+         n += 6;
+      }
+      else if ("vii".equals(ones))
+      {
+         n += 7;
+      }
+      else if ("viii".equals(ones))
+      {
+         n += 8;
+      }
+      else if ("ix".equals(ones))
+      {
+         n += 9;
+      }
+
+      return n;
+   }
+
+   @Override
+   public String toString()
+   {
+      return location;
+   }
+
+   /*
+    * The components of a location that matched one of the location
+    * patterns. The prefix, separator, value and control sequence
+    * are only set if the pattern has the corresponding group. The
+    * number is the integer value of a digit, roman or alpha
+    * location.
+    */
+   private static class Part
+   {
+      GlsLocationKey getPrefixKey()
+      {
+         if (prefixKey == null)
+         {
+            prefixKey = new GlsLocationKey(prefix);
+         }
+
+         return prefixKey;
+      }
+
+      GlsLocationKey getPrefixSepKey()
+      {
+         if (prefixSepKey == null)
+         {
+            prefixSepKey = new GlsLocationKey(prefix+separator);
+         }
+
+         return prefixSepKey;
+      }
+
+      GlsLocationKey getValueKey()
+      {
+         if (valueKey == null)
+         {
+            valueKey = new GlsLocationKey(value);
+         }
+
+         return valueKey;
+      }
+
+      String prefix, separator, value, cs;
+      int number = 0;
+      boolean hasNumber = false;
+
+      private GlsLocationKey prefixKey, prefixSepKey, valueKey;
+   }
+
+   private String location;
+
+   private Part[] parts = new Part[NUM_TYPES];
+   private int parsedTypes = 0;
+
+   private static final int TYPE_WRGLOSSARY=0, TYPE_CS=1, TYPE_DIGIT=2,
+     TYPE_ROMAN_LC=3, TYPE_ROMAN_UC=4, TYPE_ALPHA=5, NUM_TYPES=6;
+}
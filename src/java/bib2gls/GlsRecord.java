@@ -119,117 +119,19 @@ public class GlsRecord implements Comparable<GlsRecord>
       Vector<Bib2GlsEntry> bibData, 
       Vector<Bib2GlsEntry> dualData)
    {
-      String labelPrefix = resource.getLabelPrefix();
-      String dualPrefix = resource.getDualPrefix();
-      String tertiaryPrefix = resource.getTertiaryPrefix();
+      String recordLabel = getLabel(resource.getRecordLabelPrefix());
 
-      String recordLabelPrefix = resource.getRecordLabelPrefix();
-      String recordLabel = getLabel(recordLabelPrefix);
-
-      for (Bib2GlsEntry entry : bibData)
-      {
-         String entryId = entry.getId();
-
-         if (recordLabel.equals(entryId)
-              || (labelPrefix != null && !entryId.startsWith(labelPrefix)
-                   && recordLabel.equals(labelPrefix+entryId))
-            )
-         {
-            return entry;
-         }
-
-         if (dualData == null)
-         {
-            if (dualPrefix != null
-                 && !entryId.startsWith(dualPrefix)
-                 && recordLabel.equals(dualPrefix+entryId))
-            {
-               return entry;
-            }
-
-            if (tertiaryPrefix != null
-                 && !entryId.startsWith(tertiaryPrefix)
-                 && recordLabel.equals(tertiaryPrefix+entryId))
-            {
-               return entry;
-            }
-         }
-      }
-
-      if (dualData != null)
-      {
-         for (Bib2GlsEntry entry : dualData)
-         {
-            String entryId = entry.getId();
-
-            if (recordLabel.equals(entryId)
-                || (dualPrefix != null
-                 && !entryId.startsWith(dualPrefix)
-                 && recordLabel.equals(dualPrefix+entryId)))
-            {
-               return entry;
-            }
-
-            assert (entry instanceof Bib2GlsDualEntry);
-
-            Bib2GlsDualEntry dual = (Bib2GlsDualEntry)entry;
-
-            if (dual.hasTertiary())
-            {
-               entryId = entry.getOriginalId();
-
-               if (tertiaryPrefix != null)
-               {
-                  entryId = tertiaryPrefix+entryId;
-               }
-
-               if (recordLabel.equals(entryId)
-                   || (tertiaryPrefix != null
-                    && !entryId.startsWith(tertiaryPrefix)
-                    && recordLabel.equals(tertiaryPrefix+entryId)))
-               {
-                  return entry;
-               }
-
-            }
-         }
-      }
-
-      return null;
+      return resource.getEntryMatchingRecordLabel(recordLabel,
+        bibData, dualData);
    }
 
    public Bib2GlsEntry getEntry(GlsResource resource,
       Vector<Bib2GlsEntry> data, boolean tryFlipping)
    {
-      String labelPrefix = resource.getLabelPrefix();
-
-      String recordLabelPrefix = resource.getRecordLabelPrefix();
-      String recordLabel = getLabel(recordLabelPrefix);
-
-      for (Bib2GlsEntry entry : data)
-      {
-         String entryId = entry.getId();
-
-         if (recordLabel.equals(entryId)
-              || (labelPrefix != null && !entryId.startsWith(labelPrefix)
-                   && recordLabel.equals(labelPrefix+entryId))
-            )
-         {
-            return entry;
-         }
-
-         if (tryFlipping)
-         {
-            String flippedLabel = resource.flipLabel(recordLabel);
+      String recordLabel = getLabel(resource.getRecordLabelPrefix());
 
-            if (entryId.equals(flippedLabel))
-            {
-               return entry;
-            }
-         }
-      }
-
-      return null;
+      return resource.getEntryMatchingRecordLabel(recordLabel,
+        data, tryFlipping);
    }
 
    @Override
@@ -270,6 +172,16 @@ public class GlsRecord implements Comparable<GlsRecord>
       label = newLabel;
    }
 
+   /*
+    * Gets all the labels that this record may match (without the
+    * record label prefix). Only the selection records may have
+    * more than one label.
+    */
+   public String[] getLabels()
+   {
+      return new String[] {label};
+   }
+
    public String getPrefix()
    {
       return prefix;
@@ -494,6 +406,51 @@ public class GlsRecord implements Comparable<GlsRecord>
       return false;
    }
 
+   /*
+    * Gets the key used to look up records that may have a matching
+    * location (as determined by the base locationMatch). The key
+    * may change if this record is merged with another record.
+    */
+   public String getLocationMatchKey()
+   {
+      if (bib2gls.mergeWrGlossaryLocations())
+      {
+         Matcher m = WRGLOSSARY_PATTERN.matcher(location);
+
+         if (m.matches())
+         {
+            return "w"+m.group(2);
+         }
+      }
+
+      return "l"+location;
+   }
+
+   /*
+    * Gets the key used to look up records that may partially match
+    * this one. Records that have the same label, prefix and counter
+    * and matching locations (as determined by the base locationMatch)
+    * will have the same key. The key may change if this record is
+    * merged with another record.
+    */
+   public String getPartialMatchKey()
+   {
+      String locKey = getLocationMatchKey();
+
+      StringBuilder builder = new StringBuilder(label.length()
+        + prefix.length() + counter.length() + locKey.length() + 3);
+
+      builder.append(label);
+      builder.append('\0');
+      builder.append(prefix);
+      builder.append('\0');
+      builder.append(counter);
+      builder.append('\0');
+      builder.append(locKey);
+
+      return builder.toString();
+   }
+
    public boolean equals(Object obj)
    {
       if (obj == null || !(obj instanceof GlsRecord)) return false;
@@ -807,660 +764,38 @@ public class GlsRecord implements Comparable<GlsRecord>
          return false;
       }
 
-      return consecutive(rec.location, location, gap, maxGap);
+      return GlsLocationKey.consecutive(rec.getLocationKey(),
+        getLocationKey(), gap, maxGap);
    }
 
    // is location2 one more than location1?
    public static boolean consecutive(String location1, String location2,
      int gap, int[] maxGap)
    {
-      if (location1.isEmpty() || location2.isEmpty())
-      {
-         return false;
-      }
-
-      Matcher m1 = WRGLOSSARY_PATTERN.matcher(location1);
-      Matcher m2 = WRGLOSSARY_PATTERN.matcher(location2);
-
-      if (m1.matches() && m2.matches())
-      {
-         String loc1 = m1.group(2);
-         String loc2 = m2.group(2);
-
-         if (loc1.equals(loc2))
-         {
-            return false;
-         }
-
-         return consecutive(loc1, loc2, gap, maxGap);
-      }
-
-      m1 = CS_PATTERN.matcher(location1);
-      m2 = CS_PATTERN.matcher(location2);
-
-      if (m1.matches() && m2.matches())
-      {
-         String prefix1 = m1.group(1);
-         String prefix2 = m2.group(1);
-
-         String cs1 = m1.group(2);
-         String cs2 = m2.group(2);
-
-         if (!cs1.equals(cs2))
-         {
-            return false;
-         }
-
-         String loc1 = m1.group(3);
-         String loc2 = m2.group(3);
-
-         if (loc1.equals(loc2))
-         {
-            return consecutive(prefix1, prefix2, gap, maxGap);
-         }
-
-         return consecutive(loc1, loc2, gap, maxGap);
-      }
-
-      m1 = DIGIT_PATTERN.matcher(location1);
-      m2 = DIGIT_PATTERN.matcher(location2);
-
-      if (m1.matches() && m2.matches())
-      {
-         String prefix1 = m1.group(1);
-         String prefix2 = m2.group(1);
-
-         if (prefix1 == null) prefix1 = "";
-         if (prefix2 == null) prefix2 = "";
-
-         String sep1 = m1.group(2);
-         String sep2 = m2.group(2);
-
-         String suffix1 = m1.group(3);
-         String suffix2 = m2.group(3);
-
-         if (suffix1.equals(suffix2))
-         {
-            if (suffix1.equals("0"))
-            {
-               return sep1.equals(sep2) ?
-                      consecutive(prefix1, prefix2, gap, maxGap) :
-                      consecutive(prefix1+sep1, prefix2+sep2, gap, maxGap);
-            }
-            else
-            {
-               return false;
-            }
-         }
-
-         if (!prefix1.equals(prefix2) || !sep1.equals(sep2))
-         {
-            return false;
-         }
-
-         try
-         {
-            int loc1 = Integer.parseInt(suffix1);
-            int loc2 = Integer.parseInt(suffix2);
-            int diff = loc2 - loc1;
-
-            if (0 < diff && diff <= gap)
-            {
-               if (diff > maxGap[0])
-               {
-                  maxGap[0] = diff;
-               }
-
-               return true;
-            }
-
-            return false;
-         }
-         catch (NumberFormatException e)
-         {// shouldn't happen (integer pattern matched)
-            e.printStackTrace();
-         }
-
-         return false;
-      }
-
-      m1 = ROMAN_LC_PATTERN.matcher(location1);
-      m2 = ROMAN_LC_PATTERN.matcher(location2);
-
-      if (m1.matches() && m2.matches()
-       && !(   m1.group(3).isEmpty()
-            && m1.group(4) == null
-            && m1.group(5) == null
-            && m1.group(6) == null
-           )
-       && !(   m2.group(3).isEmpty()
-            && m2.group(4) == null
-            && m2.group(5) == null
-            && m2.group(6) == null
-           )
-         )
-      {
-         String prefix1 = m1.group(1);
-         String prefix2 = m2.group(1);
-
-         String sep1 = m1.group(2);
-         String sep2 = m2.group(2);
-
-         int loc1 = romanToDecimal(m1.group(3), m1.group(4), m1.group(5),
-                    m1.group(6));
-         int loc2 = romanToDecimal(m2.group(3), m2.group(4), m2.group(5),
-                    m2.group(6));
-
-         if (loc1 == loc2)
-         {
-            return sep1.equals(sep2) ?
-                   consecutive(prefix1, prefix2, gap, maxGap) :
-                   consecutive(prefix1+sep1, prefix2+sep2, gap, maxGap);
-         }
-
-         if (!prefix1.equals(prefix2) || !sep1.equals(sep2))
-         {
-            return false;
-         }
-
-         int diff = loc2 - loc1;
-
-         if (0 < diff && diff <= gap)
-         {
-            if (diff > maxGap[0])
-            {
-               maxGap[0] = diff;
-            }
-
-            return true;
-         }
-
-         return false;
-      }
-
-      m1 = ROMAN_UC_PATTERN.matcher(location1);
-      m2 = ROMAN_UC_PATTERN.matcher(location2);
-
-      if (m1.matches() && m2.matches()
-       && !(   m1.group(3).isEmpty()
-            && m1.group(4) == null
-            && m1.group(5) == null
-            && m1.group(6) == null
-           )
-       && !(   m2.group(3).isEmpty()
-            && m2.group(4) == null
-            && m2.group(5) == null
-            && m2.group(6) == null
-           )
-         )
-      {
-         String prefix1 = m1.group(1);
-         String prefix2 = m2.group(1);
-
-         String sep1 = m1.group(2);
-         String sep2 = m2.group(2);
-
-         String hundreds1 = m1.group(4);
-         String tens1 = m1.group(5);
-         String ones1 = m1.group(6);
-
-         String hundreds2 = m2.group(4);
-         String tens2 = m2.group(5);
-         String ones2 = m2.group(6);
-
-         int loc1 = romanToDecimal(m1.group(3).toLowerCase(),
-            hundreds1 == null ? null : hundreds1.toLowerCase(), 
-            tens1 == null ? null : tens1.toLowerCase(),
-            ones1 == null ? null : ones1.toLowerCase());
-         int loc2 = romanToDecimal(m2.group(3).toLowerCase(),
-            hundreds2 == null ? null : hundreds2.toLowerCase(),
-            tens2 == null ? null : tens2.toLowerCase(),
-            ones2 == null ? null : ones2.toLowerCase());
-
-         if (loc1 == loc2)
-         {
-            return sep1.equals(sep2) ?
-                   consecutive(prefix1, prefix2, gap, maxGap) :
-                   consecutive(prefix1+sep1, prefix2+sep2, gap, maxGap);
-         }
-
-         if (!prefix1.equals(prefix2) || !sep1.equals(sep2))
-         {
-            return false;
-         }
-
-         int diff = loc2 - loc1;
-
-         if (0 < diff && diff <= gap)
-         {
-            if (diff > maxGap[0])
-            {
-               maxGap[0] = diff;
-            }
-
-            return true;
-         }
-
-         return false;
-      }
-
-      m1 = ALPHA_PATTERN.matcher(location1);
-      m2 = ALPHA_PATTERN.matcher(location2);
-
-      if (m1.matches() && m2.matches())
-      {
-         String prefix1 = m1.group(1);
-         String prefix2 = m2.group(1);
-
-         if (prefix1 == null) prefix1 = "";
-         if (prefix2 == null) prefix2 = "";
-
-         String sep1 = m1.group(2);
-         String sep2 = m2.group(2);
-
-         String suffix1 = m1.group(3);
-         String suffix2 = m2.group(3);
-
-         if (suffix1 == null)
-         {
-            sep1 = m1.group(4);
-            suffix1 = m1.group(5);
-         }
-
-         if (suffix2 == null)
-         {
-            sep2 = m2.group(4);
-            suffix2 = m2.group(5);
-         }
-
-         if (suffix1.equals(suffix2))
-         {
-            return sep1.equals(sep2) ?
-                   consecutive(prefix1, prefix2, gap, maxGap) :
-                   consecutive(prefix1+sep1, prefix2+sep2, gap, maxGap);
-         }
-
-         if (!prefix1.equals(prefix2) || !sep1.equals(sep2))
-         {
-            return false;
-         }
-
-         int loc1 = suffix1.codePointAt(0);
-         int loc2 = suffix2.codePointAt(0);
-
-         int diff = loc2 - loc1;
-
-         if (0 < diff && diff <= gap)
-         {
-            if (diff > maxGap[0])
-            {
-               maxGap[0] = diff;
-            }
-
-            return true;
-         }
-
-         return false;
-      }
-
-      return false;
+      return GlsLocationKey.consecutive(new GlsLocationKey(location1),
+        new GlsLocationKey(location2), gap, maxGap);
    }
 
    // is location1 < location2?
    public static boolean lessThan(String location1, String location2)
    {
-      if (location1.isEmpty() || location2.isEmpty())
-      {
-         return false;
-      }
-
-      Matcher m1 = CS_PATTERN.matcher(location1);
-      Matcher m2 = CS_PATTERN.matcher(location2);
-
-      if (m1.matches() && m2.matches())
-      {
-         String prefix1 = m1.group(1);
-         String prefix2 = m2.group(1);
-
-         String cs1 = m1.group(2);
-         String cs2 = m2.group(2);
-
-         if (!cs1.equals(cs2))
-         {
-            return false;
-         }
-
-         String loc1 = m1.group(3);
-         String loc2 = m2.group(3);
-
-         if (loc1.equals(loc2))
-         {
-            return lessThan(prefix1, prefix2);
-         }
-
-         return lessThan(loc1, loc2);
-      }
-
-      m1 = DIGIT_PATTERN.matcher(location1);
-      m2 = DIGIT_PATTERN.matcher(location2);
-
-      if (m1.matches() && m2.matches())
-      {
-         String prefix1 = m1.group(1);
-         String prefix2 = m2.group(1);
-
-         if (prefix1 == null) prefix1 = "";
-         if (prefix2 == null) prefix2 = "";
-
-         String sep1 = m1.group(2);
-         String sep2 = m2.group(2);
-
-         String suffix1 = m1.group(3);
-         String suffix2 = m2.group(3);
-
-         if (suffix1.equals(suffix2))
-         {
-            if (suffix1.equals("0"))
-            {
-               return sep1.equals(sep2) ?
-                      lessThan(prefix1, prefix2) :
-                      lessThan(prefix1+sep1, prefix2+sep2);
-            }
-            else
-            {
-               return false;
-            }
-         }
-
-         if (!prefix1.equals(prefix2) || !sep1.equals(sep2))
-         {
-            return false;
-         }
-
-         try
-         {
-            int loc1 = Integer.parseInt(suffix1);
-            int loc2 = Integer.parseInt(suffix2);
-
-            return loc1 < loc2;
-         }
-         catch (NumberFormatException e)
-         {// shouldn't happen (integer pattern matched)
-            e.printStackTrace();
-         }
-
-         return false;
-      }
-
-      m1 = ROMAN_LC_PATTERN.matcher(location1);
-      m2 = ROMAN_LC_PATTERN.matcher(location2);
-
-      if (m1.matches() && m2.matches()
-       && !(   m1.group(3).isEmpty()
-            && m1.group(4) == null
-            && m1.group(5) == null
-            && m1.group(6) == null
-           )
-       && !(   m2.group(3).isEmpty()
-            && m2.group(4) == null
-            && m2.group(5) == null
-            && m2.group(6) == null
-           )
-         )
-      {
-         String prefix1 = m1.group(1);
-         String prefix2 = m2.group(1);
-
-         String sep1 = m1.group(2);
-         String sep2 = m2.group(2);
-
-         int loc1 = romanToDecimal(m1.group(3), m1.group(4), m1.group(5),
-                    m1.group(6));
-         int loc2 = romanToDecimal(m2.group(3), m2.group(4), m2.group(5),
-                    m2.group(6));
-
-         if (loc1 == loc2)
-         {
-            return sep1.equals(sep2) ?
-                   lessThan(prefix1, prefix2) :
-                   lessThan(prefix1+sep1, prefix2+sep2);
-         }
-
-         if (!prefix1.equals(prefix2) || !sep1.equals(sep2))
-         {
-            return false;
-         }
-
-         return loc1 < loc2;
-      }
-
-      m1 = ROMAN_UC_PATTERN.matcher(location1);
-      m2 = ROMAN_UC_PATTERN.matcher(location2);
-
-      if (m1.matches() && m2.matches()
-       && !(   m1.group(3).isEmpty()
-            && m1.group(4) == null
-            && m1.group(5) == null
-            && m1.group(6) == null
-           )
-       && !(   m2.group(3).isEmpty()
-            && m2.group(4) == null
-            && m2.group(5) == null
-            && m2.group(6) == null
-           )
-         )
-      {
-         String prefix1 = m1.group(1);
-         String prefix2 = m2.group(1);
-
-         String sep1 = m1.group(2);
-         String sep2 = m2.group(2);
-
-         String hundreds1 = m1.group(4);
-         String tens1 = m1.group(5);
-         String ones1 = m1.group(6);
-
-         String hundreds2 = m2.group(4);
-         String tens2 = m2.group(5);
-         String ones2 = m2.group(6);
-
-         int loc1 = romanToDecimal(m1.group(3).toLowerCase(),
-            hundreds1 == null ? null : hundreds1.toLowerCase(), 
-            tens1 == null ? null : tens1.toLowerCase(),
-            ones1 == null ? null : ones1.toLowerCase());
-         int loc2 = romanToDecimal(m2.group(3).toLowerCase(),
-            hundreds2 == null ? null : hundreds2.toLowerCase(),
-            tens2 == null ? null : tens2.toLowerCase(),
-            ones2 == null ? null : ones2.toLowerCase());
-
-         if (loc1 == loc2)
-         {
-            return sep1.equals(sep2) ?
-                   lessThan(prefix1, prefix2) :
-                   lessThan(prefix1+sep1, prefix2+sep2);
-         }
-
-         if (!prefix1.equals(prefix2) || !sep1.equals(sep2))
-         {
-            return false;
-         }
-
-         return loc1 < loc2;
-      }
-
-      m1 = ALPHA_PATTERN.matcher(location1);
-      m2 = ALPHA_PATTERN.matcher(location2);
-
-      if (m1.matches() && m2.matches())
-      {
-         String prefix1 = m1.group(1);
-         String prefix2 = m2.group(1);
-
-         if (prefix1 == null) prefix1 = "";
-         if (prefix2 == null) prefix2 = "";
-
-         String sep1 = m1.group(2);
-         String sep2 = m2.group(2);
-
-         String suffix1 = m1.group(3);
-         String suffix2 = m2.group(3);
-
-         if (suffix1 == null)
-         {
-            sep1 = m1.group(4);
-            suffix1 = m1.group(5);
-         }
-
-         if (suffix2 == null)
-         {
-            sep2 = m2.group(4);
-            suffix2 = m2.group(5);
-         }
-
-         if (suffix1.equals(suffix2))
-         {
-            return sep1.equals(sep2) ?
-                   lessThan(prefix1, prefix2) :
-                   lessThan(prefix1+sep1, prefix2+sep2);
-         }
-
-         if (!prefix1.equals(prefix2) || !sep1.equals(sep2))
-         {
-            return false;
-         }
-
-         int loc1 = suffix1.codePointAt(0);
-         int loc2 = suffix2.codePointAt(0);
-
-         return loc1 < loc2;
-      }
-
-      return false;
+      return GlsLocationKey.lessThan(new GlsLocationKey(location1),
+        new GlsLocationKey(location2));
    }
 
-   // arguments should already have been checked against the pattern
-   private static int romanToDecimal(String thousands, String hundreds, 
-     String tens, String ones)
+   /**
+    * Gets the parsed location. This is created when first required
+    * and recreated if the location has since been changed.
+    */
+   public GlsLocationKey getLocationKey()
    {
-      int n = 0;
-
-      if (thousands != null && !thousands.isEmpty())
+      // compare references as the location may have been reassigned
+      if (locationKey == null || locationKey.getLocation() != location)
       {
-         n = 1000*thousands.length();
+         locationKey = new GlsLocationKey(location);
       }
 
-      if ("c".equals(hundreds))
-      {
-         n += 100;
-      }
-      else if ("cc".equals(hundreds))
-      {
-         n += 200;
-      }
-      else if ("ccc".equals(hundreds))
-      {
-         n += 300;
-      }
-      else if ("cd".equals(hundreds))
-      {
-         n += 400;
-      }
-      else if ("d".equals(hundreds))
-      {
-         n += 500;
-      }
-      else if ("dc".equals(hundreds))
-      {
-         n += 600;
-      }
-      else if ("dcc".equals(hundreds))
-      {
-         n += 700;
-      }
-      else if ("dccc".equals(hundreds))
-      {
-         n += 800;
-      }
-      else if ("cm".equals(hundreds))
-      {
-         n += 900;
-      }
-
-      if ("x".equals(tens))
-      {
-         n += 10;
-      }
-      else if ("xx".equals(tens))
-      {
-         n += 20;
-      }
-      else if ("xxx".equals(tens))
-      {
-         n += 30;
-      }
-      else if ("xl".equals(tens))
-      {
-         n += 40;
-      }
-      else if ("l".equals(tens))
-      {
-         n += 50;
-      }
-      else if ("lx".equals(tens))
-      {
-         n += 60;
-      }
-      else if ("lxx".equals(tens))
-      {
-         n += 70;
-      }
-      else if ("lxxx".equals(tens))
-      {
-         n += 80;
-      }
-      else if ("xc".equals(tens))
-      {
-         n += 90;
-      }
-
-      if ("i".equals(ones))
-      {
-         n += 1;
-      }
-      else if ("ii".equals(ones))
-      {
-         n += 2;
-      }
-      else if ("iii".equals(ones))
-      {
-         n += 3;
-      }
-      else if ("iv".equals(ones))
-      {
-         n += 4;
-      }
-      else if ("v".equals(ones))
-      {
-         n += 5;
-      }
-      else if ("vi".equals(ones))
-      {
-         n += 6;
-      }
-      else if ("vii".equals(ones))
-      {
-         n += 7;
-      }
-      else if ("viii".equals(ones))
-      {
-         n += 8;
-      }
-      else if ("ix".equals(ones))
-      {
-         n += 9;
-      }
-
-      return n;
+      return locationKey;
    }
 
    public static Vector<GlsRecord> merge(Vector<GlsRecord> list1,
@@ -1491,7 +826,8 @@ public class GlsRecord implements Comparable<GlsRecord>
          }
          else
          {
-            while (lessThan(r2.location, r1.location))
+            while (GlsLocationKey.lessThan(r2.getLocationKey(),
+                     r1.getLocationKey()))
             {
                list.add(r2);
                idx2++;
@@ -1533,6 +869,8 @@ public class GlsRecord implements Comparable<GlsRecord>
 
    private long index=0;
 
+   private GlsLocationKey locationKey = null;
+
    protected Bib2Gls bib2gls;
 
    private static long globalIndex=0L;
@@ -1547,21 +885,21 @@ public class GlsRecord implements Comparable<GlsRecord>
       "subparagraph"
     };
 
-   private static final Pattern DIGIT_PATTERN
+   static final Pattern DIGIT_PATTERN
      = Pattern.compile("(.*?)([^\\p{javaDigit}]?)(\\p{javaDigit}+)");
 
-   private static final Pattern ROMAN_LC_PATTERN
+   static final Pattern ROMAN_LC_PATTERN
      = Pattern.compile("(.*?)(.??)(m*)(c{1,3}|c?d|dc{1,3}|cm)?(x{1,3}|x?l|lx{1,3}|xc)?(i{1,3}|i?v|vi{1,3}|ix)?");
 
-   private static final Pattern ROMAN_UC_PATTERN
+   static final Pattern ROMAN_UC_PATTERN
      = Pattern.compile("(.*?)(.??)(M*)(C{1,3}|C?D|DC{1,3}|CM)?(X{1,3}|X?L|LX{1,3}|XC)?(I{1,3}|I?V|VI{1,3}|IX)?");
 
-   private static final Pattern ALPHA_PATTERN
+   static final Pattern ALPHA_PATTERN
      = Pattern.compile("(.*?)(?:([^\\p{javaLowerCase}]?)(\\p{javaUpperCase}))|(?:([^\\p{javaUpperCase}]?)(\\p{javaUpperCase}))");
 
-   private static final Pattern CS_PATTERN
+   static final Pattern CS_PATTERN
      = Pattern.compile("(.*?)(?:\\\\protect\\s*)?(\\\\[\\p{javaAlphabetic}@]+)\\s*\\{([\\p{javaDigit}\\p{javaAlphabetic}]+)\\}");
 
-   private static final Pattern WRGLOSSARY_PATTERN
+   static final Pattern WRGLOSSARY_PATTERN
      = Pattern.compile("\\\\glsxtr@wrglossarylocation\\{(\\p{javaDigit}+)\\}\\{(.*)\\}");
 }
@@ -0,0 +1,413 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package com.dickimawbooks.bibgls.bib2gls;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * List of an entry's records. This behaves like an ordinary vector
+ * but also keeps an index of the records by location so that
+ * checking for duplicates or conflicting locations doesn't require
+ * a linear search of the whole list. While the records are in
+ * order of their record index (which is normally the case), the
+ * insertion point for a new record is found with a binary search.
+ *
+ * The index is only built once the list becomes large enough to
+ * make it worthwhile, and is rebuilt if the list is modified by
+ * any means other than add(GlsRecord), add(int,GlsRecord) or
+ * insertRecord(GlsRecord). Record locations are assumed not to
+ * change once added, except when merged with a record that has
+ * a matching location.
+ */
+public class GlsRecordList extends Vector<GlsRecord>
+{
+   public GlsRecordList()
+   {
+      super();
+   }
+
+   @Override
+   public synchronized boolean add(GlsRecord rec)
+   {
+      boolean indexed = isIndexed();
+
+      super.add(rec);
+
+      if (indexed)
+      {
+         int n = elementCount;
+
+         if (sorted && n > 1 && rec.compareTo(elementAt(n-2)) < 0)
+         {
+            sorted = false;
+         }
+
+         addToIndex(rec);
+         indexedModCount = modCount;
+      }
+
+      return true;
+   }
+
+   @Override
+   public synchronized void add(int idx, GlsRecord rec)
+   {
+      boolean indexed = isIndexed();
+
+      super.add(idx, rec);
+
+      if (indexed)
+      {
+         if (sorted)
+         {
+            if (idx > 0 && rec.compareTo(elementAt(idx-1)) < 0)
+            {
+               sorted = false;
+            }
+            else if (idx < elementCount-1
+                      && rec.compareTo(elementAt(idx+1)) > 0)
+            {
+               sorted = false;
+            }
+         }
+
+         addToIndex(rec);
+         indexedModCount = modCount;
+      }
+   }
+
+   @Override
+   public synchronized GlsRecord set(int idx, GlsRecord rec)
+   {
+      // replacing an element doesn't change modCount
+
+      locationIndex = null;
+
+      return super.set(idx, rec);
+   }
+
+   @Override
+   public synchronized boolean contains(Object obj)
+   {
+      if (!(obj instanceof GlsRecord) || !updateIndex())
+      {
+         return super.contains(obj);
+      }
+
+      GlsRecord rec = (GlsRecord)obj;
+
+      // Any record equal to rec must have a matching location so
+      // only the records with the same location keys need checking.
+
+      for (String key : getIndexKeys(rec))
+      {
+         Vector<GlsRecord> candidates = (key == null ? null
+            : locationIndex.get(key));
+
+         if (candidates != null)
+         {
+            for (GlsRecord r : candidates)
+            {
+               if (rec.equals(r))
+               {
+                  return true;
+               }
+            }
+         }
+      }
+
+      return false;
+   }
+
+   /**
+    * Inserts the record in order of record index, unless there's
+    * already a record with a matching location at or before the
+    * insertion point. This has the same result as
+    * Bib2GlsEntry.insertRecord(GlsRecord,Vector) but, if the list
+    * is in order, doesn't need to check every record.
+    */
+   public synchronized void insertRecord(GlsRecord rec)
+   {
+      if (!updateIndex() || !sorted)
+      {
+         insertRecordLinear(rec);
+         return;
+      }
+
+      int pos = findInsertionPoint(rec);
+
+      // find the first record at or before the insertion point
+      // that has a matching location
+
+      int matchIdx = -1;
+      GlsRecord match = null;
+
+      for (String key : getIndexKeys(rec))
+      {
+         Vector<GlsRecord> candidates = (key == null ? null
+            : locationIndex.get(key));
+
+         if (candidates != null)
+         {
+            for (GlsRecord r : candidates)
+            {
+               if (r.locationMatch(rec) || r.partialMatch(rec))
+               {
+                  int i = indexOfRecord(r, pos);
+
+                  if (i > -1 && (matchIdx == -1 || i < matchIdx))
+                  {
+                     matchIdx = i;
+                     match = r;
+                  }
+               }
+            }
+         }
+      }
+
+      if (match == null)
+      {
+         add(pos, rec);
+         return;
+      }
+
+      if (match.locationMatch(rec))
+      {
+         return;
+      }
+
+      String[] oldKeys = getIndexKeys(match);
+
+      if (!match.resolveConflict(rec))
+      {
+         add(matchIdx, rec);
+      }
+
+      // The existing record may have been merged with the new
+      // record, so make sure it can still be found.
+
+      if (!Arrays.equals(oldKeys, getIndexKeys(match)) && isIndexed())
+      {
+         addToIndex(match);
+      }
+   }
+
+   /*
+    * The original linear search, for use when the list isn't in
+    * order of record index.
+    */
+   private void insertRecordLinear(GlsRecord rec)
+   {
+      for (int i = 0, n = elementCount; i < n; i++)
+      {
+         GlsRecord r = elementAt(i);
+
+         if (r.locationMatch(rec))
+         {
+            return;
+         }
+
+         if (r.partialMatch(rec))
+         {
+            String[] oldKeys = getIndexKeys(r);
+
+            if (!r.resolveConflict(rec))
+            {
+               add(i, rec);
+            }
+
+            if (!Arrays.equals(oldKeys, getIndexKeys(r)) && isIndexed())
+            {
+               addToIndex(r);
+            }
+
+            return;
+         }
+
+         int result = rec.compareTo(r);
+
+         if (result <= 0)
+         {
+            add(i, rec);
+            return;
+         }
+      }
+
+      add(rec);
+   }
+
+   /*
+    * Gets the position of the first record whose index is greater
+    * than or equal to the given record's index. Requires the list
+    * to be in order.
+    */
+   private int findInsertionPoint(GlsRecord rec)
+   {
+      int low = 0;
+      int high = elementCount;
+
+      while (low < high)
+      {
+         int mid = (low + high) >>> 1;
+
+         if (rec.compareTo(elementAt(mid)) > 0)
+         {
+            low = mid+1;
+         }
+         else
+         {
+            high = mid;
+         }
+      }
+
+      return low;
+   }
+
+   /*
+    * Gets the position of the given record object, provided that
+    * it's at or before the given maximum position. Returns -1 if
+    * not found. Requires the list to be in order.
+    */
+   private int indexOfRecord(GlsRecord rec, int maxPos)
+   {
+      int i = findInsertionPoint(rec);
+
+      for (int n = Math.min(maxPos, elementCount-1); i <= n; i++)
+      {
+         GlsRecord r = elementAt(i);
+
+         if (r == rec)
+         {
+            return i;
+         }
+
+         if (r.compareTo(rec) != 0)
+         {
+            break;
+         }
+      }
+
+      return -1;
+   }
+
+   private boolean isIndexed()
+   {
+      return locationIndex != null && indexedModCount == modCount;
+   }
+
+   /*
+    * Ensures the index is up to date. Returns false if the list is
+    * too small to need an index.
+    */
+   private boolean updateIndex()
+   {
+      if (isIndexed())
+      {
+         return true;
+      }
+
+      if (elementCount < MIN_INDEX_SIZE)
+      {
+         locationIndex = null;
+         return false;
+      }
+
+      locationIndex = new HashMap<String,Vector<GlsRecord>>();
+      sorted = true;
+
+      GlsRecord prev = null;
+
+      for (int i = 0; i < elementCount; i++)
+      {
+         GlsRecord rec = elementAt(i);
+
+         if (prev != null && rec.compareTo(prev) < 0)
+         {
+            sorted = false;
+         }
+
+         addToIndex(rec);
+         prev = rec;
+      }
+
+      indexedModCount = modCount;
+
+      return true;
+   }
+
+   /*
+    * Adds the record to the index. Records may be indexed under
+    * their base location, their nameref location and their nameref
+    * partial match value (hcounter, title or href), since
+    * locationMatch and partialMatch may use any of these depending
+    * on the merge setting and on which record is being tested.
+    * Stale entries (from merged records) are harmless as every
+    * candidate is checked with locationMatch, partialMatch or
+    * equals.
+    */
+   private void addToIndex(GlsRecord rec)
+   {
+      for (String key : getIndexKeys(rec))
+      {
+         if (key != null)
+         {
+            addToIndex(key, rec);
+         }
+      }
+   }
+
+   private void addToIndex(String key, GlsRecord rec)
+   {
+      Vector<GlsRecord> list = locationIndex.get(key);
+
+      if (list == null)
+      {
+         list = new Vector<GlsRecord>();
+         locationIndex.put(key, list);
+      }
+
+      list.add(rec);
+   }
+
+   /*
+    * Gets the keys that the record is indexed under. The nameref
+    * keys are null if not applicable.
+    */
+   private static String[] getIndexKeys(GlsRecord rec)
+   {
+      if (rec instanceof GlsRecordNameRef)
+      {
+         GlsRecordNameRef nameref = (GlsRecordNameRef)rec;
+
+         return new String[] {rec.getLocationMatchKey(),
+           nameref.getNameRefLocationKey(),
+           nameref.getNameRefPartialMatchKey()};
+      }
+
+      return new String[] {rec.getLocationMatchKey()};
+   }
+
+   private HashMap<String,Vector<GlsRecord>> locationIndex = null;
+   private int indexedModCount = -1;
+   private boolean sorted = true;
+
+   private static final int MIN_INDEX_SIZE = 16;
+}
@@ -167,6 +167,109 @@ public class GlsRecordNameRef extends GlsRecord
               && hcounter.equals(rec.hcounter);
    }
 
+   /*
+    * Gets the key used to look up records that may have a matching
+    * location when the location is determined by the title or href
+    * rather than the actual location. Returns null if this
+    * record's locationMatch uses the base location test.
+    */
+   public String getNameRefLocationKey()
+   {
+      if (bib2gls.mergeNameRefOnLocation()
+          || (bib2gls.mergeWrGlossaryLocations() 
+            && getCounter().equals("wrglossary")))
+      {
+         return null;
+      }
+
+      String value = bib2gls.mergeNameRefOnTitle() ? title : href;
+
+      StringBuilder builder = new StringBuilder(getCounter().length()
+        + value.length() + 2);
+
+      builder.append('n');
+      builder.append(getCounter());
+      builder.append('\0');
+      builder.append(value);
+
+      return builder.toString();
+   }
+
+   /*
+    * Gets the key used to look up records in the same entry's
+    * record list that partialMatch may match on the hcounter,
+    * title or href (according to the merge setting). Returns null
+    * if this record's partialMatch uses the base location test.
+    */
+   public String getNameRefPartialMatchKey()
+   {
+      if (bib2gls.mergeNameRefOnLocation()
+          || (bib2gls.mergeWrGlossaryLocations() 
+            && getCounter().equals("wrglossary")))
+      {
+         return null;
+      }
+
+      String value;
+
+      if (bib2gls.mergeNameRefOnHcounter())
+      {
+         value = hcounter;
+      }
+      else if (bib2gls.mergeNameRefOnTitle())
+      {
+         value = title;
+      }
+      else
+      {
+         value = href;
+      }
+
+      StringBuilder builder = new StringBuilder(getCounter().length()
+        + value.length() + 2);
+
+      builder.append('p');
+      builder.append(getCounter());
+      builder.append('\0');
+      builder.append(value);
+
+      return builder.toString();
+   }
+
+   /*
+    * Gets the key used to look up records that may partially match
+    * this one on the hcounter, title or href (according to the
+    * merge setting) rather than on the location.
+    */
+   public String getNameRefMatchKey()
+   {
+      String value;
+
+      if (bib2gls.mergeNameRefOnHcounter())
+      {
+         value = hcounter;
+      }
+      else if (bib2gls.mergeNameRefOnTitle())
+      {
+         value = title;
+      }
+      else
+      {
+         value = href;
+      }
+
+      StringBuilder builder = new StringBuilder(getLabel().length()
+        + getCounter().length() + value.length() + 2);
+
+      builder.append(getLabel());
+      builder.append('\0');
+      builder.append(getCounter());
+      builder.append('\0');
+      builder.append(value);
+
+      return builder.toString();
+   }
+
    /*
     * Match all parts except the format.
     */ 
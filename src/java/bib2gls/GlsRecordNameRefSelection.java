@@ -133,10 +133,6 @@ public class GlsRecordNameRefSelection extends GlsRecordNameRef
    {
       String recordLabelPrefix = resource.getRecordLabelPrefix();
 
-      String labelPrefix = resource.getLabelPrefix();
-      String dualPrefix = resource.getDualPrefix();
-      String tertiaryPrefix = resource.getTertiaryPrefix();
-
       // iterate over preferred order first
       for (String currentLabel : labels)
       {
@@ -147,73 +143,12 @@ public class GlsRecordNameRefSelection extends GlsRecordNameRef
             recordLabel = recordLabelPrefix + recordLabel;
          }
 
-         for (Bib2GlsEntry entry : bibData)
-         {
-            String entryId = entry.getId();
-
-            if (recordLabel.equals(entryId)
-                 || (labelPrefix != null && !entryId.startsWith(labelPrefix)
-                      && recordLabel.equals(labelPrefix+entryId))
-               )
-            {
-               return entry;
-            }
-
-            if (dualData == null)
-            {
-               if (dualPrefix != null
-                    && !entryId.startsWith(dualPrefix)
-                    && recordLabel.equals(dualPrefix+entryId))
-               {
-                  return entry;
-               }
-
-               if (tertiaryPrefix != null
-                    && !entryId.startsWith(tertiaryPrefix)
-                    && recordLabel.equals(tertiaryPrefix+entryId))
-               {
-                  return entry;
-               }
-            }
-         }
+         Bib2GlsEntry entry = resource.getEntryMatchingRecordLabel(
+           recordLabel, bibData, dualData);
 
-         if (dualData != null)
+         if (entry != null)
          {
-            for (Bib2GlsEntry entry : dualData)
-            {
-               String entryId = entry.getId();
-
-               if (recordLabel.equals(entryId)
-                   || (dualPrefix != null
-                    && !entryId.startsWith(dualPrefix)
-                    && recordLabel.equals(dualPrefix+entryId)))
-               {
-                  return entry;
-               }
-
-               assert (entry instanceof Bib2GlsDualEntry);
-
-               Bib2GlsDualEntry dual = (Bib2GlsDualEntry)entry;
-
-               if (dual.hasTertiary())
-               {
-                  entryId = entry.getOriginalId();
-
-                  if (tertiaryPrefix != null)
-                  {
-                     entryId = tertiaryPrefix+entryId;
-                  }
-
-                  if (recordLabel.equals(entryId)
-                      || (tertiaryPrefix != null
-                       && !entryId.startsWith(tertiaryPrefix)
-                       && recordLabel.equals(tertiaryPrefix+entryId)))
-                  {
-                     return entry;
-                  }
-
-               }
-            }
+            return entry;
          }
       }
 
@@ -224,7 +159,6 @@ public class GlsRecordNameRefSelection extends GlsRecordNameRef
    public Bib2GlsEntry getEntry(GlsResource resource,
       Vector<Bib2GlsEntry> data, boolean tryFlipping)
    {
-      String labelPrefix = resource.getLabelPrefix();
       String recordLabelPrefix = resource.getRecordLabelPrefix();
 
       // iterate over preferred order first
@@ -237,32 +171,23 @@ public class GlsRecordNameRefSelection extends GlsRecordNameRef
             recordLabel = recordLabelPrefix + recordLabel;
          }
 
-         for (Bib2GlsEntry entry : data)
-         {
-            String entryId = entry.getId();
+         Bib2GlsEntry entry = resource.getEntryMatchingRecordLabel(
+           recordLabel, data, tryFlipping);
 
-            if (recordLabel.equals(entryId)
-                 || (labelPrefix != null && !entryId.startsWith(labelPrefix)
-                      && recordLabel.equals(labelPrefix+entryId))
-               )
-            {
-               return entry;
-            }
-
-            if (tryFlipping)
-            {
-               String flippedLabel = resource.flipLabel(recordLabel);
-
-               if (entryId.equals(flippedLabel))
-               {
-                  return entry;
-               }
-            }
+         if (entry != null)
+         {
+            return entry;
          }
       }
 
       return null;
    }
 
+   @Override
+   public String[] getLabels()
+   {
+      return labels;
+   }
+
    private String[] labels;
 }
@@ -83,6 +83,9 @@ public class GlsResource
       this.pluralSuffix = pluralSuffix;
       this.dualPluralSuffix = pluralSuffix;
 
+      resourceOptions = data.getArg(0).toString(parser)
+        + "\n" + data.getArg(1).toString(parser);
+
       init(data.getArg(0), data.getArg(1));
    }
 
@@ -144,7 +147,7 @@ public class GlsResource
 
       String filename = texPath.getTeXPath(true);
 
-      dependencies = new Vector<String>();
+      dependencies = new LinkedHashSet<String>();
       KeyValList list = KeyValList.getList(parser, opts);
 
       String[] srcList = null;
@@ -5066,6 +5069,64 @@ public class GlsResource
       }
    }
 
+   /**
+    * Gets the collation key cache for the given collator settings.
+    * The same sort value may be collated several times for this
+    * resource set (for example, the primary, dual and secondary
+    * lists or when sorting the group list), so the keys are
+    * shared by all comparators with the same settings.
+    * @param rules the collator rules
+    * @param strength the collator strength
+    * @param decomposition the collator decomposition mode
+    * @return map of sort values to collation keys
+    */ 
+   public HashMap<String,CollationKey> getCollationKeyCache(String rules,
+     int strength, int decomposition)
+   {
+      if (collationKeyCaches == null)
+      {
+         collationKeyCaches 
+            = new HashMap<String,HashMap<String,CollationKey>>();
+      }
+
+      String id = String.format("%d\t%d\t%s", strength, decomposition, rules);
+
+      HashMap<String,CollationKey> cache = collationKeyCaches.get(id);
+
+      if (cache == null)
+      {
+         cache = new HashMap<String,CollationKey>();
+         collationKeyCaches.put(id, cache);
+      }
+
+      return cache;
+   }
+
+   /**
+    * Gets the cache of sort values with break point markers
+    * inserted for the given break point settings.
+    * @param id identifies the break point settings
+    * @return map of original sort values to sort values with
+    * break point markers
+    */ 
+   public HashMap<String,String> getBreakPointCache(String id)
+   {
+      if (breakPointCaches == null)
+      {
+         breakPointCaches = new HashMap<String,HashMap<String,String>>();
+      }
+
+      HashMap<String,String> cache = breakPointCaches.get(id);
+
+      if (cache == null)
+      {
+         cache = new HashMap<String,String>();
+         breakPointCaches.put(id, cache);
+      }
+
+      return cache;
+   }
+
    /**
     * Gets the default locale for this resource set.
     * A return value of null indicates the default
@@ -6730,45 +6791,17 @@ public class GlsResource
          {
             // search bib file for "% Encoding: <encoding>"
 
-            BufferedReader reader = null;
-            Pattern pattern = Pattern.compile("% Encoding: ([^\\s]+)");
+            String encoding = null;
+            int encodingLineNum = 0;
+
+            BibEncodingDetector detector = new BibEncodingDetector();
 
             try
             {
-               reader = bib2gls.createBufferedReader(bibFile.toPath(),
-                  bib2gls.getDefaultCharset());
-
-               String line;
-               int lineNum=0;
-
-               while ((line = reader.readLine()) != null)
+               if (detector.scan(bibFile, bib2gls.getDefaultCharset()))
                {
-                  lineNum++;
-                  Matcher m = pattern.matcher(line);
-
-                  if (m.matches())
-                  {
-                     String encoding = m.group(1);
-
-                     try
-                     {
-                        srcCharset = Charset.forName(encoding);
-
-                        bib2gls.logEncodingDetected(srcCharset);
-                     }
-                     catch (Exception e)
-                     {
-                        bib2gls.warning(bibFile, lineNum,
-                         bib2gls.getMessage("warning.ignoring.unknown.encoding", 
-                          encoding),
-                         e);
-                        srcCharset = bibCharset;
-                     }
-
-                     reader.close();
-                     reader = null;
-                     break;
-                  }
+                  encoding = detector.getEncoding();
+                  encodingLineNum = detector.getLineNumber();
                }
             }
             catch (MalformedInputException e)
@@ -6778,11 +6811,22 @@ public class GlsResource
                    bibFile, bib2gls.getDefaultCharset(),
                    "charset", "--default-encoding", e));
             }
-            finally
+
+            if (encoding != null)
             {
-               if (reader != null)
+               try
+               {
+                  srcCharset = Charset.forName(encoding);
+
+                  bib2gls.logEncodingDetected(srcCharset);
+               }
+               catch (Exception e)
                {
-                  reader.close();
+                  bib2gls.warning(bibFile, encodingLineNum,
+                   bib2gls.getMessage("warning.ignoring.unknown.encoding", 
+                    encoding),
+                   e);
+                  srcCharset = bibCharset;
                }
             }
          }
@@ -6810,6 +6854,30 @@ public class GlsResource
       }
    }
 
+   /**
+    * Gets the bib files for this resource set.
+    */ 
+   public Vector<TeXPath> getSources()
+   {
+      return sources;
+   }
+
+   /**
+    * Gets the .glstex file for this resource set.
+    */ 
+   public File getTeXFile()
+   {
+      return texFile;
+   }
+
+   /**
+    * Determines whether or not the "master" option was used.
+    */ 
+   public boolean isMaster()
+   {
+      return masterGlsTeXPath != null;
+   }
+
    public String getSourceFileList()
    {
       StringBuilder builder = new StringBuilder();
@@ -6929,7 +6997,23 @@ public class GlsResource
    public void addCompoundEntry(CompoundEntry compoundEntry)
    {
       // bib definition needs to override aux information. 
-      bib2gls.addCompoundEntry(compoundEntry, true);
+
+      if (bib2gls.isParsingConcurrently())
+      {
+         // The global list is shared by all resource sets, so
+         // defer until this resource's turn.
+
+         if (pendingCompoundEntries == null)
+         {
+            pendingCompoundEntries = new Vector<CompoundEntry>();
+         }
+
+         pendingCompoundEntries.add(compoundEntry);
+      }
+      else
+      {
+         bib2gls.addCompoundEntry(compoundEntry, true);
+      }
 
       if (compoundEntries == null)
       {
@@ -6955,6 +7039,24 @@ public class GlsResource
       }
    }
 
+   /**
+    * Adds any compound entries found while the bib files were
+    * parsed concurrently to the global list. This needs to be
+    * done in the order of the resource sets.
+    */ 
+   public void flushPendingCompoundEntries()
+   {
+      if (pendingCompoundEntries != null)
+      {
+         for (CompoundEntry compoundEntry : pendingCompoundEntries)
+         {
+            bib2gls.addCompoundEntry(compoundEntry, true);
+         }
+
+         pendingCompoundEntries = null;
+      }
+   }
+
    /**
     * Gets the first compound entry that has the given main.
     * This will search either the global or local list depending on
@@ -7135,7 +7237,6 @@ public class GlsResource
       bibData = new Vector<Bib2GlsEntry>();
       dualData = new Vector<Bib2GlsEntry>();
 
-      Vector<GlsRecord> records = bib2gls.getRecords();
       Vector<GlsSeeRecord> seeRecords = bib2gls.getSeeRecords();
 
       Vector<Bib2GlsEntry> seeList = null;
@@ -7212,7 +7313,7 @@ public class GlsResource
             boolean hasRecords = entry.hasRecords();
             boolean dualHasRecords = (dual != null && dual.hasRecords());
 
-            for (GlsRecord r : records)
+            for (GlsRecord r : getRecordsMatching(primaryId, dualId, tertiaryId))
             {
                GlsRecord rec = getRecord(primaryId, dualId, tertiaryId, r);
 
@@ -7691,6 +7792,88 @@ public class GlsResource
       applyCompoundEntrySettings();
 
       addSupplementalRecords();
+
+      if (bib2gls.isIncrementalOn())
+      {
+         entryLabels = createEntryLabels();
+      }
+   }
+
+   /*
+    * Gets the labels of all the entries, including duals and
+    * tertiaries, and the labels of their dependencies. These are
+    * the labels with records that may affect this resource set.
+    * This has to be done before the entries are selected, as a
+    * duplicate label suffix may then be appended to the labels.
+    */
+   private HashSet<String> createEntryLabels()
+   {
+      HashSet<String> labels = new HashSet<String>();
+
+      addEntryLabels(labels, bibData);
+      addEntryLabels(labels, dualData);
+
+      return labels;
+   }
+
+   private void addEntryLabels(HashSet<String> labels,
+     Vector<Bib2GlsEntry> entries)
+   {
+      if (entries == null)
+      {
+         return;
+      }
+
+      for (Bib2GlsEntry entry : entries)
+      {
+         labels.add(entry.getId());
+
+         if (entry instanceof Bib2GlsDualEntry
+              && ((Bib2GlsDualEntry)entry).hasTertiary())
+         {
+            labels.add(tertiaryPrefix == null ?
+               entry.getOriginalId():
+               tertiaryPrefix+entry.getOriginalId());
+         }
+
+         if (entry.hasDependencies())
+         {
+            for (Iterator<String> it = entry.getDependencyIterator();
+                 it.hasNext();)
+            {
+               labels.add(it.next());
+            }
+         }
+      }
+   }
+
+   /**
+    * Gets the labels with records that may affect this resource
+    * set. This is only available with --incremental after stage 3.
+    * @return the set of labels or null if not available
+    */
+   public HashSet<String> getEntryLabels()
+   {
+      return entryLabels;
+   }
+
+   /**
+    * Gets the resource options and the .glstex file name as given
+    * in the aux file.
+    */
+   public String getResourceOptions()
+   {
+      return resourceOptions;
+   }
+
+   /**
+    * Determines whether or not the "duplicate-label-suffix" option
+    * was used, in which case the labels of entries selected by
+    * other resource sets may affect this one.
+    */
+   public boolean hasDuplicateLabelSuffix()
+   {
+      return dupLabelSuffix != null;
    }
 
    /**
@@ -8087,17 +8270,17 @@ public class GlsResource
     */ 
    public void addDependent(String id)
    {
-      if (!dependencies.contains(id))
+      if (dependencies.add(id))
       {
          bib2gls.verboseMessage("message.added.dep", id);
-         dependencies.add(id);
       }
    }
 
-   /** Gets the list of all dependent entries.
-    * @return vector of dependent entries
+   /** Gets the set of all dependent entries (in the order they
+    * were added).
+    * @return set of dependent entries
     */
-   public Vector<String> getDependencies()
+   public Set<String> getDependencies()
    {
       return dependencies;
    }
@@ -8165,7 +8348,7 @@ public class GlsResource
 
       try
       {
-         writer = new PrintWriter(texFile, charSet.name());
+         writer = openTeXFileWriter(charSet.name());
 
          printHeaderComments(writer);
 
@@ -8237,6 +8420,14 @@ public class GlsResource
 
          writer.println(
            "\\let\\glsxtr@newabbreviation\\bibglsorgdefabbreviation");
+
+         if (!closeTeXFileWriter(writer))
+         {
+            bib2gls.message(bib2gls.getMessage("message.glstex.unchanged",
+              texFile.toString()));
+         }
+
+         writer = null;
       }
       finally
       {
@@ -8247,6 +8438,56 @@ public class GlsResource
       }
    }
 
+   /**
+    * Opens the writer for the .glstex file. The content is
+    * buffered until {@link #closeTeXFileWriter(PrintWriter)}
+    * is used.
+    * @param charSetName the name of the character encoding
+    * @return the writer
+    * @throws IOException if the encoding isn't supported
+    */ 
+   private PrintWriter openTeXFileWriter(String charSetName)
+   throws IOException
+   {
+      texFileWriter = new TeXFileWriter(Charset.forName(charSetName),
+        bib2gls.takeTeXFileBuffer());
+
+      return new PrintWriter(texFileWriter);
+   }
+
+   /**
+    * Closes the writer and saves the buffered content to the
+    * .glstex file. The file isn't rewritten if its content is
+    * identical to the buffered content. This ensures that the
+    * file's modification time is only changed if the content
+    * has changed, so build tools won't perform an unnecessary
+    * LaTeX run.
+    * @param writer the writer obtained from
+    * {@link #openTeXFileWriter(String)}
+    * @return true if the file was written or false if it was
+    * unchanged
+    * @throws IOException if the file can't be read or written
+    */ 
+   private boolean closeTeXFileWriter(PrintWriter writer)
+   throws IOException
+   {
+      writer.close();
+
+      TeXFileWriter output = texFileWriter;
+      texFileWriter = null;
+
+      boolean written = !output.isContentOf(texFile);
+
+      if (written)
+      {
+         output.writeTo(texFile);
+      }
+
+      bib2gls.releaseTeXFileBuffer(output.getBuffer());
+
+      return written;
+   }
+
    /**
     * Adds missing parents. Used if the "missing-parents" option is set
     * to "create".
@@ -8354,14 +8595,11 @@ public class GlsResource
 
       // has parent already been added to entries?
 
-      for (Bib2GlsEntry entry : entries)
+      if (getSelectedEntryMap(entries).containsKey(parentId))
       {
-         if (entry.getId().equals(parentId))
-         {
-            // already added
+         // already added
 
-            return;
-         }
+         return;
       }
 
       if (parentId.equals(childEntry.getId()))
@@ -8552,10 +8790,13 @@ public class GlsResource
 
             Bib2GlsEntry entry = getEntryMatchingRecord(rec, data, hasDuals);
 
-            if (entry != null && !entries.contains(entry))
+            if (entry != null && !isSelectedEntry(entries, entry))
             {
-                bib2gls.debugMessage("message.selecting.entry.record.match",
-                  entry.getId(), rec.getLabel(recordLabelPrefix));
+               if (bib2gls.isDebuggingOn())
+               {
+                  bib2gls.debugMessage("message.selecting.entry.record.match",
+                    entry.getId(), rec.getLabel(recordLabelPrefix));
+               }
 
                if (selectionMode == SELECTION_RECORDED_AND_DEPS
                  ||selectionMode == SELECTION_RECORDED_AND_DEPS_AND_SEE
@@ -8640,7 +8881,7 @@ public class GlsResource
                }
             }
 
-            if (entry != null && !entries.contains(entry))
+            if (entry != null && !isSelectedEntry(entries, entry))
             {
                 bib2gls.debugMessage("message.selecting.entry.seerecord.match",
                   entry.getId(), recordLabel);
@@ -8677,7 +8918,7 @@ public class GlsResource
 
                String label = rec.getLabel(recordLabelPrefix);
 
-               if (entry != null && !entries.contains(entry))
+               if (entry != null && !isSelectedEntry(entries, entry))
                {
                   if (supplementalSelection.length == 1
                   && supplementalSelection[0].equals("all"))
@@ -8754,7 +8995,7 @@ public class GlsResource
 
                if (entry != null)
                {
-                  if (!entries.contains(entry))
+                  if (!isSelectedEntry(entries, entry))
                   {
                      bib2gls.debugMessage(
                        "message.selecting.entry.crossresource.dep", entry);
@@ -8873,7 +9114,7 @@ public class GlsResource
                }
             }
 
-            if (dep != null && !entries.contains(dep))
+            if (dep != null && !isSelectedEntry(entries, dep))
             {
                addHierarchy(dep, entries, data);
                addEntry(entries, dep);
@@ -9285,7 +9526,7 @@ public class GlsResource
 
       try
       {
-         writer = new PrintWriter(texFile, charSetName);
+         writer = openTeXFileWriter(charSetName);
 
          printHeaderComments(writer);
 
@@ -10042,44 +10283,58 @@ public class GlsResource
             {
                Vector<GlsRecord> records = bib2gls.getRecords();
 
-               if (secondarySortSettings.isReverse())
-               {
-                  for (int i = records.size()-1; i >= 0; i--)
-                  {
-                     GlsRecord rec = records.get(i);
+               // Each record is looked up in the secondary list so
+               // index the list once rather than for each record.
+               // (The list isn't modified while the records are
+               // processed.)
 
-                     Bib2GlsEntry entry = getEntryMatchingRecord(rec, 
-                        secondaryList, false);
+               loopDataIndex = new EntryIndex(secondaryList);
 
-                     if (entry != null)
+               try
+               {
+                  if (secondarySortSettings.isReverse())
+                  {
+                     for (int i = records.size()-1; i >= 0; i--)
                      {
-                        writeCopyToGlossary(writer, entry);
+                        GlsRecord rec = records.get(i);
+
+                        Bib2GlsEntry entry = getEntryMatchingRecord(rec, 
+                           secondaryList, false);
 
-                        if (setWidest)
+                        if (entry != null)
                         {
-                           updateWidestName(entry, secondaryType, font, frc);
+                           writeCopyToGlossary(writer, entry);
+
+                           if (setWidest)
+                           {
+                              updateWidestName(entry, secondaryType, font, frc);
+                           }
                         }
                      }
                   }
-               }
-               else
-               {
-                  for (GlsRecord rec : records)
+                  else
                   {
-                     Bib2GlsEntry entry = getEntryMatchingRecord(rec, 
-                        secondaryList, false);
-
-                     if (entry != null)
+                     for (GlsRecord rec : records)
                      {
-                        writeCopyToGlossary(writer, entry);
+                        Bib2GlsEntry entry = getEntryMatchingRecord(rec, 
+                           secondaryList, false);
 
-                        if (setWidest)
+                        if (entry != null)
                         {
-                           updateWidestName(entry, secondaryType, font, frc);
+                           writeCopyToGlossary(writer, entry);
+
+                           if (setWidest)
+                           {
+                              updateWidestName(entry, secondaryType, font, frc);
+                           }
                         }
                      }
                   }
                }
+               finally
+               {
+                  loopDataIndex = null;
+               }
             }
             else
             {
@@ -10229,9 +10484,19 @@ public class GlsResource
             }
          }
 
-         bib2gls.message(bib2gls.getChoiceMessage("message.written", 0,
-            "entry", 3, entryCount, texFile.toString()));
+         if (closeTeXFileWriter(writer))
+         {
+            bib2gls.message(bib2gls.getChoiceMessage("message.written", 0,
+               "entry", 3, entryCount, texFile.toString()));
+         }
+         else
+         {
+            bib2gls.message(bib2gls.getChoiceMessage(
+               "message.written.unchanged", 0,
+               "entry", 3, entryCount, texFile.toString()));
+         }
 
+         writer = null;
       }
       finally
       {
@@ -10479,7 +10744,7 @@ public class GlsResource
               || !entry.getId().equals(entry.getOriginalId()))
          )
       {
-         writer.format("\\GlsXtrSetField{%s}{%s}{%s}%n",
+         Bib2GlsEntry.writeGlsXtrSetField(writer,
            id, saveOriginalId, entry.getOriginalId());
       }
 
@@ -10591,7 +10856,7 @@ public class GlsResource
               || !entry.getEntryType().equals(entry.getOriginalEntryType()))
           )
       {
-         writer.format("\\GlsXtrSetField{%s}{%s}{%s}%n",
+         Bib2GlsEntry.writeGlsXtrSetField(writer,
            id, saveOriginalEntryType, entry.getOriginalEntryType());
       }
 
@@ -10605,7 +10870,7 @@ public class GlsResource
 
             if (val != null)
             {
-               writer.format("\\GlsXtrSetField{%s}{%s}{%s}%n",
+               Bib2GlsEntry.writeGlsXtrSetField(writer,
                  id, field, val);
             }
          }
@@ -10631,7 +10896,7 @@ public class GlsResource
 
             if (val != null)
             {
-               writer.format("\\GlsXtrSetField{%s}{%s}{%s}%n",
+               Bib2GlsEntry.writeGlsXtrSetField(writer,
                  id, field, val);
             }
          }
@@ -10682,7 +10947,7 @@ public class GlsResource
 
          if (tail != null)
          {
-            writer.format("\\GlsXtrSetField{%s}{%s}{%s}%n",
+            Bib2GlsEntry.writeGlsXtrSetField(writer,
               id, saveCrossRefTail, tail);
          }
       }
@@ -10693,7 +10958,7 @@ public class GlsResource
 
          if (val != null)
          {
-            writer.format("\\GlsXtrSetField{%s}{%s}{%s}%n",
+            Bib2GlsEntry.writeGlsXtrSetField(writer,
               id, DEFINITION_INDEX_FIELD, val);
          }
       }
@@ -10704,7 +10969,7 @@ public class GlsResource
 
          if (val != null)
          {
-            writer.format("\\GlsXtrSetField{%s}{%s}{%s}%n",
+            Bib2GlsEntry.writeGlsXtrSetField(writer,
               id, USE_INDEX_FIELD, val);
          }
       }
@@ -10737,7 +11002,7 @@ public class GlsResource
 
          if (value != null)
          {
-            writer.format("\\GlsXtrSetField{%s}{%s}{%s}%n",
+            Bib2GlsEntry.writeGlsXtrSetField(writer,
              entry.getId(), copyActionGroupField, value);
          }
       }
@@ -10766,7 +11031,7 @@ public class GlsResource
 
             if (value != null)
             {
-               writer.format("\\GlsXtrSetField{%s}{%s}{%s}%n",
+               Bib2GlsEntry.writeGlsXtrSetField(writer,
                 id, copyActionGroupField, value);
             }
          }
@@ -10813,7 +11078,7 @@ public class GlsResource
 
               if (value != null)
               {
-                 writer.format("\\GlsXtrSetField{%s}{%s}{%s}%n",
+                 Bib2GlsEntry.writeGlsXtrSetField(writer,
                   entry.getId(), copyActionGroupField, value);
               }
            }
@@ -11664,20 +11929,39 @@ public class GlsResource
    {
       entry.setSelected(state);
 
+      // keep count in case the same label is selected more than once
+
       if (state)
       {
          if (selectedEntries == null)
          {
-            selectedEntries = new Vector<String>();
+            selectedEntries = new HashMap<String,Integer>();
          }
 
-         selectedEntries.add(entry.getId());
+         String id = entry.getId();
+         Integer count = selectedEntries.get(id);
+
+         selectedEntries.put(id, 
+           Integer.valueOf(count == null ? 1 : count.intValue()+1));
       }
       else
       {
          if (selectedEntries != null)
          {
-            selectedEntries.remove(entry.getId());
+            String id = entry.getId();
+            Integer count = selectedEntries.get(id);
+
+            if (count != null)
+            {
+               if (count.intValue() > 1)
+               {
+                  selectedEntries.put(id, Integer.valueOf(count.intValue()-1));
+               }
+               else
+               {
+                  selectedEntries.remove(id);
+               }
+            }
          }
       }
    }
@@ -11689,7 +11973,7 @@ public class GlsResource
     */ 
    public boolean isEntrySelected(String label)
    {
-      if (selectedEntries != null && selectedEntries.contains(label))
+      if (selectedEntries != null && selectedEntries.containsKey(label))
       {
          return true;
       }
@@ -11759,34 +12043,24 @@ public class GlsResource
          throw new NullPointerException();
       }
 
-      String flippedLabel = (tryFlipping ? flipLabel(label) : null);
+      EntryIndex index = getEntryIndex(data);
+
+      int pos = index.getPosition(label);
 
-      for (Bib2GlsEntry entry : data)
+      if (tryFlipping)
       {
-         String id = entry.getId();
+         String flippedLabel = flipLabel(label);
 
-         if (id.equals(label))
+         if (flippedLabel != null)
          {
-            return entry;
+            pos = minPosition(pos, index.getPosition(flippedLabel));
+            pos = minPosition(pos, index.getFlippedPosition(flippedLabel));
          }
 
-         if (tryFlipping)
-         {
-            if (id.equals(flippedLabel))
-            {
-               return entry;
-            }
-
-            String flippedId = flipLabel(id);
-
-            if (flippedId.equals(label) || flippedId.equals(flippedLabel))
-            {
-               return entry;
-            }
-         }
+         pos = minPosition(pos, index.getFlippedPosition(label));
       }
 
-      return null;
+      return pos == -1 ? null : data.get(pos);
    }
 
    /**
@@ -11862,6 +12136,161 @@ public class GlsResource
       return rec.getRecord(this, primaryId, dualId, tertiaryId);
    }
 
+   /**
+    * Gets the records that may match any of the given labels, in
+    * order of occurrence. This uses the record label index so
+    * that only the records with a relevant label are returned.
+    * Each record should still be checked with
+    * {@link #getRecord(String,String,String,GlsRecord)}.
+    * @param primaryId label of primary entry
+    * @param dualId label of dual entry (may be null)
+    * @param tertiaryId tertiary label (may be null)
+    * @return the set of candidate records
+    */
+   public TreeSet<GlsRecord> getRecordsMatching(String primaryId,
+     String dualId, String tertiaryId)
+   {
+      TreeSet<GlsRecord> set = new TreeSet<GlsRecord>();
+
+      bib2gls.addRecordsMatchingLabel(primaryId, recordLabelPrefix, set);
+      bib2gls.addRecordsMatchingLabel(dualId, recordLabelPrefix, set);
+      bib2gls.addRecordsMatchingLabel(tertiaryId, recordLabelPrefix, set);
+
+      return set;
+   }
+
+   /**
+    * Gets the entry that matches the given record label (with the
+    * record label prefix already applied). The primary list is
+    * searched first and then the dual list (if not null). If the
+    * dual list is null, the dual and tertiary prefixes are also
+    * checked against the primary list.
+    * @param recordLabel the prefixed record label
+    * @param primaryData the list of primary entries
+    * @param dualEntries the list of dual entries (may be null)
+    * @return the matching entry or null if not found
+    */
+   public Bib2GlsEntry getEntryMatchingRecordLabel(String recordLabel,
+      Vector<Bib2GlsEntry> primaryData, Vector<Bib2GlsEntry> dualEntries)
+   {
+      EntryIndex index = getEntryIndex(primaryData);
+
+      int pos = index.getPosition(recordLabel);
+      pos = minPosition(pos, 
+              index.getPrefixedPosition(recordLabel, labelPrefix));
+
+      if (dualEntries == null)
+      {
+         pos = minPosition(pos,
+                 index.getPrefixedPosition(recordLabel, dualPrefix));
+         pos = minPosition(pos,
+                 index.getPrefixedPosition(recordLabel, tertiaryPrefix));
+      }
+
+      if (pos != -1)
+      {
+         return primaryData.get(pos);
+      }
+
+      if (dualEntries != null)
+      {
+         index = getEntryIndex(dualEntries);
+
+         pos = index.getPosition(recordLabel);
+         pos = minPosition(pos,
+                 index.getPrefixedPosition(recordLabel, dualPrefix));
+         pos = minPosition(pos, index.getTertiaryPosition(recordLabel));
+
+         if (pos != -1)
+         {
+            return dualEntries.get(pos);
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Gets the entry in the given list that matches the given record label
+    * (with the record label prefix already applied).
+    * @param recordLabel the prefixed record label
+    * @param data the list of entries to search
+    * @param tryFlipping if true try matching the flipped label 
+    * @return the matching entry or null if not found
+    */
+   public Bib2GlsEntry getEntryMatchingRecordLabel(String recordLabel,
+      Vector<Bib2GlsEntry> data, boolean tryFlipping)
+   {
+      EntryIndex index = getEntryIndex(data);
+
+      int pos = index.getPosition(recordLabel);
+      pos = minPosition(pos,
+              index.getPrefixedPosition(recordLabel, labelPrefix));
+
+      if (tryFlipping)
+      {
+         String flippedLabel = flipLabel(recordLabel);
+
+         if (flippedLabel != null)
+         {
+            pos = minPosition(pos, index.getPosition(flippedLabel));
+         }
+      }
+
+      return pos == -1 ? null : data.get(pos);
+   }
+
+   /**
+    * Gets the lowest of the two list positions, where -1 indicates
+    * not found.
+    */ 
+   private static int minPosition(int pos1, int pos2)
+   {
+      if (pos1 == -1) return pos2;
+
+      if (pos2 == -1) return pos1;
+
+      return pos1 < pos2 ? pos1 : pos2;
+   }
+
+   /**
+    * Gets the index for the given list of entries. The primary and
+    * dual lists have persistent indexes. A loop that looks up each
+    * record in another list may set loopDataIndex for the duration
+    * of the loop. Any other list has a temporary index created.
+    * @param data the list of entries
+    * @return the index
+    */
+   private EntryIndex getEntryIndex(Vector<Bib2GlsEntry> data)
+   {
+      if (data == bibData)
+      {
+         if (bibDataIndex == null || bibDataIndex.getData() != data)
+         {
+            bibDataIndex = new EntryIndex(data);
+         }
+
+         return bibDataIndex;
+      }
+
+      if (data == dualData)
+      {
+         if (dualDataIndex == null || dualDataIndex.getData() != data)
+         {
+            dualDataIndex = new EntryIndex(data);
+         }
+
+         return dualDataIndex;
+      }
+
+      if (loopDataIndex != null && loopDataIndex.getData() == data)
+      {
+         return loopDataIndex;
+      }
+
+      return new EntryIndex(data);
+   }
+
    /**
     * Gets the entry that matches the given record. Searches both
     * the primary and dual data lists.
@@ -11928,21 +12357,72 @@ public class GlsResource
    {
       String id = entry.getId();
 
-      for (Bib2GlsEntry e : entries)
+      HashMap<String,Bib2GlsEntry> map = getSelectedEntryMap(entries);
+
+      Bib2GlsEntry e = map.get(id);
+
+      if (e != null)
       {
-         if (e.getId().equals(id))
-         {
-            bib2gls.debugMessage("message.entry.already.added", id,
-             e.getOriginalEntryType(), e.getOriginalId(),
-             entry.getOriginalEntryType(), entry.getOriginalId());
-            return;
-         }
+         bib2gls.debugMessage("message.entry.already.added", id,
+          e.getOriginalEntryType(), e.getOriginalId(),
+          entry.getOriginalEntryType(), entry.getOriginalId());
+         return;
       }
 
       entries.add(entry);
+      map.put(id, entry);
       setSelected(entry, true);
    }
 
+   /**
+    * Determines whether or not an entry with the same label as the
+    * given entry is in the list of selected entries.
+    * @param entries the list of selected entries
+    * @param entry the entry
+    * @return true if the list contains an entry with the same
+    * label
+    */ 
+   private boolean isSelectedEntry(Vector<Bib2GlsEntry> entries,
+     Bib2GlsEntry entry)
+   {
+      return getSelectedEntryMap(entries).containsKey(entry.getId());
+   }
+
+   /**
+    * Gets the map of labels to entries for the given list of
+    * selected entries. Entries are only added to the list with
+    * addEntry, which also updates the map. If the list size no
+    * longer matches the map size (because entries have since been
+    * removed from the list) the map is rebuilt.
+    * @param entries the list of selected entries
+    * @return map of labels to the first entry with that label
+    */ 
+   private HashMap<String,Bib2GlsEntry> getSelectedEntryMap(
+     Vector<Bib2GlsEntry> entries)
+   {
+      if (selectedEntryMaps == null)
+      {
+         selectedEntryMaps 
+           = new IdentityHashMap<Vector<Bib2GlsEntry>,HashMap<String,Bib2GlsEntry>>();
+      }
+
+      HashMap<String,Bib2GlsEntry> map = selectedEntryMaps.get(entries);
+
+      if (map == null || map.size() != entries.size())
+      {
+         map = new HashMap<String,Bib2GlsEntry>();
+
+         for (Bib2GlsEntry e : entries)
+         {
+            map.putIfAbsent(e.getId(), e);
+         }
+
+         selectedEntryMaps.put(entries, map);
+      }
+
+      return map;
+   }
+
    /**
     * Clears the child list for each entry.
     */ 
@@ -14546,6 +15026,8 @@ public class GlsResource
             listener.putControlSequence(new LaTeXGenericCommand(true,
               titlecasename, new char[] {'o', 'm'}, 
               defList, new TeXObject[] { listener.createStack()}));
+
+            bib2gls.clearInterpreterCache();
          }
       }
    }
@@ -17887,6 +18369,189 @@ public class GlsResource
       return bib2gls;
    }
 
+   /**
+    * Inner class for looking up entries by label in a list of entries
+    * without having to iterate over the list. Each map stores the
+    * position of the first entry in the list with the given key,
+    * so lookups return the same entry as a search from the start of
+    * the list. Entries are only ever appended to the list and their
+    * labels don't change once they have been added, so the index
+    * is brought up to date with any new elements before each lookup.
+    */ 
+   class EntryIndex
+   {
+      public EntryIndex(Vector<Bib2GlsEntry> data)
+      {
+         this.data = data;
+         idMap = new HashMap<String,Integer>();
+      }
+
+      public Vector<Bib2GlsEntry> getData()
+      {
+         return data;
+      }
+
+      private void update()
+      {
+         int n = data.size();
+
+         if (n < indexed)
+         {
+            // elements have been removed so start again
+
+            idMap.clear();
+            flippedMap = null;
+            tertiaryMap = null;
+            indexed = 0;
+         }
+
+         for (; indexed < n; indexed++)
+         {
+            Bib2GlsEntry entry = data.get(indexed);
+            Integer pos = Integer.valueOf(indexed);
+
+            idMap.putIfAbsent(entry.getId(), pos);
+
+            if (flippedMap != null)
+            {
+               addFlipped(entry, pos);
+            }
+
+            if (tertiaryMap != null)
+            {
+               addTertiary(entry, pos);
+            }
+         }
+      }
+
+      private void addFlipped(Bib2GlsEntry entry, Integer pos)
+      {
+         String flippedId = flipLabel(entry.getId());
+
+         if (flippedId != null)
+         {
+            flippedMap.putIfAbsent(flippedId, pos);
+         }
+      }
+
+      private void addTertiary(Bib2GlsEntry entry, Integer pos)
+      {
+         if (entry instanceof Bib2GlsDualEntry
+              && ((Bib2GlsDualEntry)entry).hasTertiary())
+         {
+            String tertiaryId = entry.getOriginalId();
+
+            if (tertiaryPrefix != null)
+            {
+               tertiaryId = tertiaryPrefix+tertiaryId;
+            }
+
+            tertiaryMap.putIfAbsent(tertiaryId, pos);
+         }
+      }
+
+      /**
+       * Gets the position of the first entry with the given label.
+       * @param label the label
+       * @return the position or -1 if not found
+       */ 
+      public int getPosition(String label)
+      {
+         update();
+
+         return toPosition(idMap.get(label));
+      }
+
+      /**
+       * Gets the position of the first entry whose label with the
+       * given prefix prepended matches the given label. Only entries
+       * whose label doesn't already start with the prefix are
+       * considered.
+       * @param label the prefixed label
+       * @param prefix the prefix (may be null)
+       * @return the position or -1 if not found
+       */ 
+      public int getPrefixedPosition(String label, String prefix)
+      {
+         if (prefix == null || !label.startsWith(prefix))
+         {
+            return -1;
+         }
+
+         String id = label.substring(prefix.length());
+
+         if (id.startsWith(prefix))
+         {
+            return -1;
+         }
+
+         return getPosition(id);
+      }
+
+      /**
+       * Gets the position of the first entry whose flipped label
+       * matches the given label.
+       * @param label the label
+       * @return the position or -1 if not found
+       */ 
+      public int getFlippedPosition(String label)
+      {
+         update();
+
+         // the flipped labels depend on whether or not there are
+         // tertiary entries
+
+         if (flippedMap == null || flippedTertiaries != hasTertiaries)
+         {
+            flippedMap = new HashMap<String,Integer>();
+            flippedTertiaries = hasTertiaries;
+
+            for (int i = 0; i < indexed; i++)
+            {
+               addFlipped(data.get(i), Integer.valueOf(i));
+            }
+         }
+
+         return toPosition(flippedMap.get(label));
+      }
+
+      /**
+       * Gets the position of the first dual entry with a
+       * tertiary entry whose tertiary label matches the given
+       * label.
+       * @param label the label
+       * @return the position or -1 if not found
+       */ 
+      public int getTertiaryPosition(String label)
+      {
+         update();
+
+         if (tertiaryMap == null)
+         {
+            tertiaryMap = new HashMap<String,Integer>();
+
+            for (int i = 0; i < indexed; i++)
+            {
+               addTertiary(data.get(i), Integer.valueOf(i));
+            }
+         }
+
+         return toPosition(tertiaryMap.get(label));
+      }
+
+      private int toPosition(Integer pos)
+      {
+         return pos == null ? -1 : pos.intValue();
+      }
+
+      private Vector<Bib2GlsEntry> data;
+      private int indexed = 0;
+      private HashMap<String,Integer> idMap;
+      private HashMap<String,Integer> flippedMap = null;
+      private HashMap<String,Integer> tertiaryMap = null;
+      private boolean flippedTertiaries = false;
+   }
+
    /**
     * Inner class for sorting field values containing a
     * comma-separated list of labels.
@@ -17963,14 +18628,17 @@ public class GlsResource
 
       private void insertByUse(String element, TreeSet<GlsRecord> set)
       {
-         Vector<GlsRecord> allRecords = bib2gls.getRecords();
+         Vector<GlsRecord> labelRecords = bib2gls.getRecordsWithLabel(element);
 
-         for (GlsRecord rec : allRecords)
+         if (labelRecords != null)
          {
-            if (element.equals(rec.getLabel()))
+            for (GlsRecord rec : labelRecords)
             {
-               set.add(rec);
-               return;
+               if (element.equals(rec.getLabel()))
+               {
+                  set.add(rec);
+                  return;
+               }
             }
          }
 
@@ -18189,8 +18857,17 @@ public class GlsResource
 
    private File texFile;
 
+   private TeXFileWriter texFileWriter = null;
+
+   private HashMap<String,HashMap<String,CollationKey>> collationKeyCaches=null;
+   private HashMap<String,HashMap<String,String>> breakPointCaches=null;
+
    private Vector<TeXPath> sources;
 
+   private String resourceOptions;
+
+   private HashSet<String> entryLabels = null;
+
    private boolean interpretLabelFields = false;
 
    private boolean stripMissingParents = false;
@@ -18366,7 +19043,13 @@ public class GlsResource
 
    private Vector<Bib2GlsEntry> dualData;
 
-   private Vector<String> selectedEntries;
+   private EntryIndex bibDataIndex = null, dualDataIndex = null;
+   private EntryIndex loopDataIndex = null;
+
+   private HashMap<String,Integer> selectedEntries;
+
+   private IdentityHashMap<Vector<Bib2GlsEntry>,HashMap<String,Bib2GlsEntry>>
+     selectedEntryMaps = null;
 
    private boolean hasDuals = false, hasTertiaries = false;
 
@@ -18637,7 +19320,7 @@ public class GlsResource
 
    private ControlSequence prefixControlSequence = new TeXCsRef("space");
 
-   private Vector<String> dependencies;
+   private LinkedHashSet<String> dependencies;
 
    private boolean dualPrimaryDependency=true;
 
@@ -18668,6 +19351,8 @@ public class GlsResource
 
    private HashMap<String,CompoundEntry> compoundEntries;
 
+   private Vector<CompoundEntry> pendingCompoundEntries = null;
+
    public static final int COMPOUND_DEF_FALSE=0;
    public static final int COMPOUND_DEF_REFD=1;
    public static final int COMPOUND_DEF_ALL=2;
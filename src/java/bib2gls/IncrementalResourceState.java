@@ -0,0 +1,107 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package com.dickimawbooks.bibgls.bib2gls;
+
+import java.util.HashSet;
+import java.util.Vector;
+
+/**
+ * The information about a resource set saved by --incremental so
+ * that the next run can determine whether or not the resource set
+ * needs processing again. The input fingerprint covers the
+ * settings, the bib and supplemental files, and the records for
+ * the entries the resource set had. The state fingerprint covers
+ * the information shared with other resource sets that's used when
+ * the entries are selected and written. The effects are the
+ * changes the resource set made to the shared information, which
+ * are repeated if the resource set is skipped so that the later
+ * resource sets aren't affected.
+ */
+public class IncrementalResourceState
+{
+   public IncrementalResourceState(String inputFingerprint,
+     String stateFingerprint, int count)
+   {
+      this.inputFingerprint = inputFingerprint;
+      this.stateFingerprint = stateFingerprint;
+      this.count = count;
+      labels = new HashSet<String>();
+      effects = new Vector<String>();
+   }
+
+   public String getInputFingerprint()
+   {
+      return inputFingerprint;
+   }
+
+   public void setInputFingerprint(String fingerprint)
+   {
+      inputFingerprint = fingerprint;
+   }
+
+   public String getStateFingerprint()
+   {
+      return stateFingerprint;
+   }
+
+   public void setStateFingerprint(String fingerprint)
+   {
+      stateFingerprint = fingerprint;
+   }
+
+   /**
+    * Gets the number of entries written by the resource set.
+    */
+   public int getCount()
+   {
+      return count;
+   }
+
+   public void setCount(int count)
+   {
+      this.count = count;
+   }
+
+   /**
+    * Gets the labels of the entries defined in the resource set's
+    * bib files and the labels that those entries depend on. Only
+    * the records for these labels affect the resource set.
+    */
+   public HashSet<String> getLabels()
+   {
+      return labels;
+   }
+
+   /**
+    * Gets the changes made to the shared information. Each
+    * element is in the form
+    * <code>&lt;stage&gt;\t&lt;kind&gt;\t&lt;value&gt;</code> where
+    * the stage is 3 (processing the entries) or 4 (selecting and
+    * writing the entries).
+    */
+   public Vector<String> getEffects()
+   {
+      return effects;
+   }
+
+   private String inputFingerprint, stateFingerprint;
+   private int count;
+   private HashSet<String> labels;
+   private Vector<String> effects;
+}
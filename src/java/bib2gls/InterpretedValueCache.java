@@ -0,0 +1,263 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package com.dickimawbooks.bibgls.bib2gls;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.dickimawbooks.texparserlib.*;
+import com.dickimawbooks.texparserlib.latex.LaTeXGenericCommand;
+
+/**
+ * Bounded least-recently-used cache of the interpreter's results.
+ * The key is the code (as a string of tokens) and the trim setting.
+ * Only code that's known not to depend on the current entry or
+ * resource and doesn't change any definitions is cached (see
+ * {@link #isCacheable(TeXParser,TeXObjectList)}). The cache must be
+ * cleared if any definitions are changed.
+ */
+public class InterpretedValueCache extends LinkedHashMap<String,String>
+{
+   public InterpretedValueCache()
+   {
+      super(64, 0.75f, true);
+   }
+
+   @Override
+   protected boolean removeEldestEntry(Map.Entry<String,String> eldest)
+   {
+      return size() > MAX_SIZE;
+   }
+
+   public static String getKey(TeXParser parser, TeXObjectList list,
+     boolean trim)
+   throws IOException
+   {
+      return (trim ? "t" : "f") + list.toString(parser);
+   }
+
+   /**
+    * Determines whether or not the result of interpreting the given
+    * list can be cached. The result can't be cached if the list
+    * contains any commands that are undefined, that are provided
+    * by bib2gls (which typically depend on the current entry or
+    * resource) or that may change definitions or counters. User
+    * commands are checked recursively.
+    */
+   public static boolean isCacheable(TeXParser parser, TeXObjectList list)
+   {
+      return isCacheable(parser, list, new HashSet<String>());
+   }
+
+   /**
+    * Determines whether or not the given list (or any user
+    * commands it uses) contains any commands that may change
+    * definitions, in which case the cache needs to be cleared after
+    * the list has been interpreted.
+    */
+   public static boolean hasAssignment(TeXParser parser, TeXObjectList list)
+   {
+      return hasAssignment(parser, list, new HashSet<String>());
+   }
+
+   private static boolean hasAssignment(TeXParser parser, TeXObjectList list,
+     HashSet<String> checked)
+   {
+      for (int i = 0, n = list.size(); i < n; i++)
+      {
+         TeXObject obj = list.get(i);
+
+         if (obj instanceof TeXObjectList)
+         {
+            if (hasAssignment(parser, (TeXObjectList)obj, checked))
+            {
+               return true;
+            }
+
+            continue;
+         }
+
+         String name = getControlSequenceName(obj);
+
+         if (name == null || checked.contains(name))
+         {
+            continue;
+         }
+
+         if (isAssignment(name))
+         {
+            return true;
+         }
+
+         checked.add(name);
+
+         ControlSequence cs = parser.getControlSequence(name);
+
+         if (cs instanceof GenericCommand)
+         {
+            TeXObjectList def = ((GenericCommand)cs).getDefinition();
+
+            if (def != null && hasAssignment(parser, def, checked))
+            {
+               return true;
+            }
+         }
+      }
+
+      return false;
+   }
+
+   private static boolean isCacheable(TeXParser parser, TeXObjectList list,
+     HashSet<String> checked)
+   {
+      for (int i = 0, n = list.size(); i < n; i++)
+      {
+         TeXObject obj = list.get(i);
+
+         if (obj instanceof TeXObjectList)
+         {
+            if (!isCacheable(parser, (TeXObjectList)obj, checked))
+            {
+               return false;
+            }
+
+            continue;
+         }
+
+         String name = getControlSequenceName(obj);
+
+         if (name == null || checked.contains(name))
+         {
+            continue;
+         }
+
+         if (isAssignment(name))
+         {
+            return false;
+         }
+
+         checked.add(name);
+
+         ControlSequence cs = parser.getControlSequence(name);
+
+         if (cs == null
+             || cs.getClass().getName().startsWith(BIB2GLS_PACKAGE))
+         {
+            return false;
+         }
+
+         if (cs instanceof GenericCommand)
+         {
+            TeXObjectList def = ((GenericCommand)cs).getDefinition();
+
+            if (def != null && !isCacheable(parser, def, checked))
+            {
+               return false;
+            }
+         }
+         else if (cs instanceof LaTeXGenericCommand)
+         {
+            // can't check the definition
+
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   private static String getControlSequenceName(TeXObject obj)
+   {
+      if (obj instanceof TeXCsRef)
+      {
+         return ((TeXCsRef)obj).getName();
+      }
+
+      if (obj instanceof ControlSequence)
+      {
+         return ((ControlSequence)obj).getName();
+      }
+
+      return null;
+   }
+
+   /**
+    * Determines whether or not the given command may change
+    * definitions, registers, counters, toggles or switches. This
+    * errs on the side of caution: as well as the known assignment
+    * commands, any command whose name starts with "new", "renew",
+    * "provide", "set", "global" or "Declare" (such as
+    * <code>\newtoggle</code> or <code>\renewrobustcmd</code>) or
+    * ends with "true" or "false" (such as <code>\booltrue</code> or
+    * the switches created by <code>\newif</code>) is treated as an
+    * assignment.
+    * A pure command that's wrongly identified just won't be cached.
+    */
+   private static boolean isAssignment(String name)
+   {
+      for (String cs : ASSIGNMENTS)
+      {
+         if (cs.equals(name))
+         {
+            return true;
+         }
+      }
+
+      for (String prefix : ASSIGNMENT_PREFIXES)
+      {
+         if (name.startsWith(prefix))
+         {
+            return true;
+         }
+      }
+
+      return name.endsWith("true") || name.endsWith("false");
+   }
+
+   private static final int MAX_SIZE = 4096;
+
+   private static final String BIB2GLS_PACKAGE = "com.dickimawbooks.bibgls.";
+
+   private static final String[] ASSIGNMENTS = new String[]
+   {
+     "def", "gdef", "edef", "xdef", "let", "global", "futurelet",
+     "long", "outer", "protected",
+     "DeclareRobustCommand", "NewDocumentCommand",
+     "RenewDocumentCommand", "ProvideDocumentCommand",
+     "DeclareDocumentCommand", "robustify",
+     "csdef", "csgdef", "csedef", "csxdef", "cslet", "letcs", "csletcs",
+     "undef", "gundef", "csundef", "csgundef",
+     "appto", "gappto", "eappto", "xappto", "preto", "gpreto",
+     "epreto", "xpreto", "csappto", "csgappto", "cseappto",
+     "csxappto", "cspreto", "csgpreto", "csepreto", "csxpreto",
+     "addtocounter", "stepcounter", "refstepcounter", "addtolength",
+     "advance", "multiply", "divide",
+     "chardef", "mathchardef", "countdef", "dimendef", "skipdef",
+     "muskipdef", "toksdef", "read", "afterassignment",
+     "catcode", "lccode", "uccode", "sfcode", "mathcode", "delcode",
+     "makeatletter", "makeatother"
+   };
+
+   private static final String[] ASSIGNMENT_PREFIXES = new String[]
+   {
+     "new", "renew", "provide", "set", "global", "Declare"
+   };
+}
@@ -0,0 +1,448 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package com.dickimawbooks.bibgls.bib2gls;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * Finds bib files using the ls-R databases, rather than running
+ * kpsewhich for each lookup. The search path for bib files and the
+ * list of directories containing ls-R databases are obtained from
+ * a single kpsewhich call (so that texmf.cnf, the environment and
+ * the compiled-in defaults are all taken into account by kpathsea
+ * itself), and then the bib files listed in the databases are
+ * indexed.
+ *
+ * Only plain bib file names can be looked up. Path elements that
+ * aren't covered by an ls-R database are checked on disk if
+ * they're non-recursive, but an existing recursive directory that
+ * isn't covered by a database would need to be searched, so in
+ * that case the lookup is indeterminate and the caller should fall
+ * back on kpsewhich.
+ */
+public class KpathseaIndex
+{
+   /**
+    * Creates a new index.
+    * @param bib2gls the application
+    * @param dbPathValue the expanded TEXMFDBS path (as given by
+    * <code>kpsewhich --expand-path=$TEXMFDBS</code>)
+    * @param bibPathValue the search path for bib files (as given by
+    * <code>kpsewhich --show-path=bib</code>)
+    */
+   public KpathseaIndex(Bib2Gls bib2gls, String dbPathValue,
+     String bibPathValue)
+   {
+      this.bib2gls = bib2gls;
+
+      dbPath = splitPath(dbPathValue);
+      bibPath = splitPath(bibPathValue);
+   }
+
+   /**
+    * Finds the given bib file on the bib search path.
+    * @param name the file name, which must have the extension .bib
+    * and no directory part
+    * @return the location (as a TeX path), an empty string if the
+    * file definitely can't be found or null if this can't be
+    * determined without kpsewhich
+    */
+   public synchronized String findBibFile(String name)
+   {
+      if (!name.endsWith(".bib") || name.indexOf('/') != -1
+           || name.indexOf(File.separatorChar) != -1)
+      {
+         return null;
+      }
+
+      loadDatabases();
+
+      Vector<String> dirs = bibFiles.get(name);
+
+      for (String element : bibPath)
+      {
+         boolean dbOnly = false;
+
+         if (element.startsWith("!!"))
+         {
+            dbOnly = true;
+            element = element.substring(2);
+         }
+
+         element = expandTilde(element);
+
+         if (element == null)
+         {
+            return null;
+         }
+
+         boolean recursive = element.endsWith("//");
+
+         element = stripTrailingSlashes(element);
+
+         if (element.isEmpty())
+         {
+            continue;
+         }
+
+         if (element.contains("//"))
+         {
+            // recursive search from the middle of the path not
+            // supported
+
+            return null;
+         }
+
+         if (isInDatabase(element))
+         {
+            if (dirs != null)
+            {
+               for (String dir : dirs)
+               {
+                  if (dir.equals(element)
+                       || (recursive && dir.startsWith(element+"/")))
+                  {
+                     return dir + "/" + name;
+                  }
+               }
+            }
+         }
+         else if (!dbOnly)
+         {
+            File dir = toFile(element);
+
+            if (recursive)
+            {
+               if (dir.isDirectory())
+               {
+                  return null;
+               }
+            }
+            else if (new File(dir, name).isFile())
+            {
+               return element + "/" + name;
+            }
+         }
+      }
+
+      return "";
+   }
+
+   /*
+    * Reads the ls-R databases in the TEXMFDBS directories (if not
+    * already done). Only the bib files are indexed. If --incremental is
+    * used and the cache already has the index for the current
+    * databases, the databases aren't read.
+    */
+   private void loadDatabases()
+   {
+      if (bibFiles != null)
+      {
+         return;
+      }
+
+      databases = new Vector<String>();
+      bibFiles = new HashMap<String,Vector<String>>();
+
+      Vector<File> lsRFiles = new Vector<File>();
+      StringBuilder builder = new StringBuilder();
+
+      for (String element : dbPath)
+      {
+         if (element.startsWith("!!"))
+         {
+            element = element.substring(2);
+         }
+
+         element = expandTilde(element);
+
+         if (element == null)
+         {
+            continue;
+         }
+
+         element = stripTrailingSlashes(element);
+
+         if (element.isEmpty() || databases.contains(element))
+         {
+            continue;
+         }
+
+         File dir = toFile(element);
+
+         File file = new File(dir, DB_NAME);
+
+         if (!file.isFile())
+         {
+            file = new File(dir, DB_NAME_LC);
+
+            if (!file.isFile())
+            {
+               continue;
+            }
+         }
+
+         databases.add(element);
+         lsRFiles.add(file);
+
+         builder.append(element);
+         builder.append('\t');
+         builder.append(file.length());
+         builder.append('\t');
+         builder.append(file.lastModified());
+         builder.append('\n');
+      }
+
+      if (databases.isEmpty())
+      {
+         return;
+      }
+
+      BibFileCache cache = bib2gls.getBibFileCache();
+      String fingerprint = null;
+
+      if (cache != null)
+      {
+         try
+         {
+            fingerprint = BibFileCache.computeDigest(builder.toString());
+
+            HashMap<String,Vector<String>> saved
+               = cache.getKpathseaIndex(fingerprint);
+
+            if (saved != null)
+            {
+               bibFiles = saved;
+               bib2gls.debugMessage("message.kpathsea.cached",
+                 cache.getFile());
+               return;
+            }
+         }
+         catch (IOException e)
+         {
+            bib2gls.debug(e);
+            fingerprint = null;
+         }
+      }
+
+      for (int i = 0; i < lsRFiles.size(); i++)
+      {
+         File file = lsRFiles.get(i);
+
+         try
+         {
+            readDatabase(file, databases.get(i));
+         }
+         catch (IOException e)
+         {
+            bib2gls.debug(e);
+         }
+      }
+
+      if (fingerprint != null)
+      {
+         cache.setKpathseaIndex(fingerprint, bibFiles);
+      }
+   }
+
+   private void readDatabase(File file, String root) throws IOException
+   {
+      bib2gls.debugMessage("message.reading", file);
+
+      BufferedReader reader = null;
+
+      try
+      {
+         reader = new BufferedReader(
+           new InputStreamReader(new FileInputStream(file), CHARSET));
+
+         String dir = root;
+         boolean ignoreDir = false;
+         String line;
+
+         while ((line = reader.readLine()) != null)
+         {
+            if (line.isEmpty() || line.startsWith("%"))
+            {
+               continue;
+            }
+
+            if (line.endsWith(":")
+                 && (line.startsWith("/") || line.startsWith("./")
+                     || line.startsWith("../") || isDriveSpec(line)))
+            {
+               dir = stripTrailingSlashes(
+                  line.substring(0, line.length()-1));
+
+               if (dir.equals("."))
+               {
+                  dir = root;
+               }
+               else if (dir.startsWith("./"))
+               {
+                  dir = root + dir.substring(1);
+               }
+               else if (dir.startsWith("../"))
+               {
+                  dir = root + "/" + dir;
+               }
+
+               // kpathsea ignores hidden directories
+
+               ignoreDir = dir.contains("/.");
+
+               continue;
+            }
+
+            if (!ignoreDir && line.endsWith(".bib"))
+            {
+               Vector<String> dirs = bibFiles.get(line);
+
+               if (dirs == null)
+               {
+                  dirs = new Vector<String>();
+                  bibFiles.put(line, dirs);
+               }
+
+               dirs.add(dir);
+            }
+         }
+      }
+      finally
+      {
+         if (reader != null)
+         {
+            reader.close();
+         }
+      }
+   }
+
+   private boolean isInDatabase(String element)
+   {
+      for (String db : databases)
+      {
+         if (element.equals(db) || element.startsWith(db+"/"))
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   private static Vector<String> splitPath(String value)
+   {
+      Vector<String> elements = new Vector<String>();
+
+      for (String element : value.split(File.pathSeparator))
+      {
+         if (!element.isEmpty())
+         {
+            elements.add(element);
+         }
+      }
+
+      return elements;
+   }
+
+   /*
+    * Expands a leading ~ to the home directory. Returns null if
+    * the element starts with ~user.
+    */
+   private String expandTilde(String element)
+   {
+      if (!element.startsWith("~"))
+      {
+         return element;
+      }
+
+      if (element.length() > 1 && element.charAt(1) != '/')
+      {
+         return null;
+      }
+
+      String home = null;
+
+      try
+      {
+         home = System.getenv("HOME");
+      }
+      catch (SecurityException e)
+      {
+      }
+
+      if (home == null)
+      {
+         home = System.getProperty("user.home");
+
+         if (home == null)
+         {
+            return null;
+         }
+      }
+
+      return toTeXPath(new File(home)) + element.substring(1);
+   }
+
+   private static String stripTrailingSlashes(String element)
+   {
+      int end = element.length();
+
+      while (end > 1 && element.charAt(end-1) == '/')
+      {
+         end--;
+      }
+
+      return element.substring(0, end);
+   }
+
+   private static boolean isDriveSpec(String line)
+   {
+      return line.length() > 2 && line.charAt(1) == ':'
+          && line.charAt(2) == '/' && Character.isLetter(line.charAt(0));
+   }
+
+   private static String toTeXPath(File file)
+   {
+      return file.getPath().replace(File.separatorChar, '/');
+   }
+
+   private static File toFile(String texPath)
+   {
+      return new File(texPath.replace('/', File.separatorChar));
+   }
+
+   private Bib2Gls bib2gls;
+
+   private Vector<String> dbPath, bibPath;
+   private Vector<String> databases = null;
+   private HashMap<String,Vector<String>> bibFiles = null;
+
+   private static final String DB_NAME = "ls-R";
+   private static final String DB_NAME_LC = "ls-r";
+
+   private static final Charset CHARSET = Charset.forName("UTF-8");
+}
@@ -19,8 +19,12 @@
 package com.dickimawbooks.bibgls.bib2gls;
 
 import java.util.Vector;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.dickimawbooks.texparserlib.TeXObjectList;
 import com.dickimawbooks.texparserlib.TeXCsRef;
@@ -607,8 +611,8 @@ public abstract class SortComparator implements Comparator<Bib2GlsEntry>
          return null;
       }
 
-      bib2gls.verbose(bib2gls.getMessage("message.non_unique_sort",
-        sort, entry.getOriginalId()));
+      bib2gls.verboseMessage("message.non_unique_sort",
+        sort, entry.getOriginalId());
 
       num = Integer.valueOf(num.intValue()+1);
 
@@ -626,37 +630,81 @@ public abstract class SortComparator implements Comparator<Bib2GlsEntry>
    protected abstract int compareElements(Bib2GlsEntry entry1, 
      Bib2GlsEntry entry2);
 
+   /*
+    * The same pair of entries may be compared many times while
+    * sorting, so identical sort values are only reported the first
+    * time a pair is found. Returns false if the messages wouldn't be
+    * shown or logged. This may be called from multiple threads with
+    * a parallel sort.
+    */
+   private synchronized boolean isFirstIdenticalReport(Bib2GlsEntry entry1,
+     Bib2GlsEntry entry2)
+   {
+      if (!bib2gls.isVerbose() && !bib2gls.isTranscriptOn())
+      {
+         return false;
+      }
+
+      if (identicalReported == null)
+      {
+         identicalReported = new HashSet<String>();
+      }
+
+      String id1 = entry1.getId();
+      String id2 = entry2.getId();
+
+      return identicalReported.add(id1.compareTo(id2) <= 0
+        ? id1 + "\u001f" + id2 : id2 + "\u001f" + id1);
+   }
+
    private int getIdenticalSortFallback(Bib2GlsEntry entry1, 
      Bib2GlsEntry entry2)
    {
-      bib2gls.verboseMessage("warning.identical",
-        entry1.getId(), entry2.getId());
+      boolean report = isFirstIdenticalReport(entry1, entry2);
+
+      if (report)
+      {
+         bib2gls.verboseMessage("warning.identical",
+           entry1.getId(), entry2.getId());
+      }
 
       switch (settings.getIdenticalSortAction())
       {
          case SortSettings.IDENTICAL_SORT_USE_ID:
 
-            bib2gls.verboseMessage("warning.identical.id");
+            if (report)
+            {
+               bib2gls.verboseMessage("warning.identical.id");
+            }
 
             return entry1.getId().compareTo(entry2.getId());
 
          case SortSettings.IDENTICAL_SORT_USE_ORIGINAL_ID:
 
-            bib2gls.verboseMessage("warning.identical.original_id");
+            if (report)
+            {
+               bib2gls.verboseMessage("warning.identical.original_id");
+            }
 
             return entry1.getOriginalId().compareTo(
                entry2.getOriginalId());
 
          case SortSettings.IDENTICAL_SORT_USE_RECORD:
 
-            bib2gls.verboseMessage("warning.identical.use");
+            if (report)
+            {
+               bib2gls.verboseMessage("warning.identical.use");
+            }
 
             return Long.compare(entry1.getRecordIndex(), 
                entry1.getRecordIndex());
 
          case SortSettings.IDENTICAL_SORT_USE_DEF:
 
-            bib2gls.verboseMessage("warning.identical.def");
+            if (report)
+            {
+               bib2gls.verboseMessage("warning.identical.def");
+            }
 
             return Long.compare(entry1.getDefinitionIndex(), 
                entry1.getDefinitionIndex());
@@ -669,13 +717,19 @@ public abstract class SortComparator implements Comparator<Bib2GlsEntry>
 
             int result = value1.compareTo(value2);
 
-            bib2gls.verboseMessage("warning.identical.field", 
-                 settings.getIdenticalSortField(), value1, value2, result);
+            if (report)
+            {
+               bib2gls.verboseMessage("warning.identical.field", 
+                    settings.getIdenticalSortField(), value1, value2, result);
+            }
 
             return result;
       }
 
-      bib2gls.verboseMessage("warning.identical.none");
+      if (report)
+      {
+         bib2gls.verboseMessage("warning.identical.none");
+      }
 
       return 0;
    }
@@ -684,7 +738,7 @@ public abstract class SortComparator implements Comparator<Bib2GlsEntry>
    {
       boolean reverse = settings.isReverse();
 
-      if (bib2gls.getCurrentResource().flattenSort())
+      if (flatten)
       {
          int result = compareElements(entry1, entry2);
 
@@ -774,6 +828,12 @@ public abstract class SortComparator implements Comparator<Bib2GlsEntry>
 
    public void sortEntries() throws Bib2GlsException
    {
+      identicalReported = null;
+
+      // The resource is looked up now as compare() may be called
+      // from other threads with a parallel sort.
+      flatten = bib2gls.getCurrentResource().flattenSort();
+
       if (settings.getSuffixOption() == SortSettings.SORT_SUFFIX_NON_UNIQUE)
       {
          sortCount = new HashMap<String,Integer>();
@@ -786,7 +846,278 @@ public abstract class SortComparator implements Comparator<Bib2GlsEntry>
          setActualSortField(entry);
       }
 
-      entries.sort(this);
+      prepareSortKeys();
+
+      if (useHierarchySortKeys())
+      {
+         setHierarchySortKeys();
+
+         sort(entries, new Comparator<Bib2GlsEntry>()
+          {
+             public int compare(Bib2GlsEntry entry1, Bib2GlsEntry entry2)
+             {
+                return compareHierarchySortKeys(entry1, entry2);
+             }
+          });
+      }
+      else
+      {
+         sort(entries, this);
+      }
+   }
+
+   /**
+    * Called after the sort values have been set but before the
+    * entries are sorted. Subclasses may override this to compute
+    * any values needed by compareElements(Bib2GlsEntry,Bib2GlsEntry)
+    * that weren't computed by updateSortValue(Bib2GlsEntry,Vector).
+    */
+   protected void prepareSortKeys()
+   {
+   }
+
+   /**
+    * Determines whether or not compareElements(Bib2GlsEntry,Bib2GlsEntry)
+    * may be called from multiple threads at the same time.
+    * Subclasses that only compare precomputed values may override
+    * this to return true.
+    */
+   protected boolean supportsParallelSort()
+   {
+      return false;
+   }
+
+   /**
+    * Determines whether or not a list of the given size should be
+    * sorted in parallel. This requires --jobs to be greater than 1
+    * and isn't used in debug mode (which shows each comparison).
+    */
+   protected boolean isParallelSortOn(int size)
+   {
+      return bib2gls.getJobs() > 1 && size >= PARALLEL_SORT_THRESHOLD
+        && supportsParallelSort() && !bib2gls.isDebuggingOn();
+   }
+
+   /**
+    * Sorts the list, in parallel if isParallelSortOn(int) is
+    * true. The parallel sort is a stable merge sort run in its own
+    * pool of --jobs threads. (Arrays.parallelSort isn't used as it
+    * always runs in the common pool, regardless of --jobs.)
+    */
+   protected void sort(Vector<Bib2GlsEntry> list,
+     Comparator<Bib2GlsEntry> comparator)
+   {
+      int n = list.size();
+
+      if (isParallelSortOn(n))
+      {
+         Bib2GlsEntry[] array = list.toArray(new Bib2GlsEntry[n]);
+         Bib2GlsEntry[] buffer = new Bib2GlsEntry[n];
+
+         int jobs = bib2gls.getJobs();
+
+         ForkJoinPool pool = new ForkJoinPool(jobs);
+
+         try
+         {
+            pool.invoke(new MergeSortTask(array, buffer, 0, n,
+              Math.max(PARALLEL_SORT_BLOCK_SIZE, n/(4*jobs)), comparator));
+         }
+         finally
+         {
+            pool.shutdown();
+         }
+
+         for (int i = 0; i < n; i++)
+         {
+            list.set(i, array[i]);
+         }
+      }
+      else
+      {
+         list.sort(comparator);
+      }
+   }
+
+   /*
+    * Sorts array[start..end) using buffer as working space. Blocks
+    * no larger than blockSize are sorted with Arrays.sort, and the
+    * sorted halves are then merged. Both are stable.
+    */
+   private static class MergeSortTask extends RecursiveAction
+   {
+      MergeSortTask(Bib2GlsEntry[] array, Bib2GlsEntry[] buffer,
+        int start, int end, int blockSize,
+        Comparator<Bib2GlsEntry> comparator)
+      {
+         this.array = array;
+         this.buffer = buffer;
+         this.start = start;
+         this.end = end;
+         this.blockSize = blockSize;
+         this.comparator = comparator;
+      }
+
+      @Override
+      protected void compute()
+      {
+         if (end - start <= blockSize)
+         {
+            Arrays.sort(array, start, end, comparator);
+            return;
+         }
+
+         int mid = (start + end) >>> 1;
+
+         invokeAll(
+           new MergeSortTask(array, buffer, start, mid, blockSize, comparator),
+           new MergeSortTask(array, buffer, mid, end, blockSize, comparator));
+
+         if (comparator.compare(array[mid-1], array[mid]) <= 0)
+         {
+            // already in order
+
+            return;
+         }
+
+         System.arraycopy(array, start, buffer, start, end - start);
+
+         int i = start;
+         int j = mid;
+
+         for (int k = start; k < end; k++)
+         {
+            if (j >= end
+                || (i < mid && comparator.compare(buffer[i], buffer[j]) <= 0))
+            {
+               array[k] = buffer[i++];
+            }
+            else
+            {
+               array[k] = buffer[j++];
+            }
+         }
+      }
+
+      private Bib2GlsEntry[] array, buffer;
+      private int start, end, blockSize;
+      private Comparator<Bib2GlsEntry> comparator;
+   }
+
+   /*
+    * Hierarchical sorts compare each level of the hierarchy in turn,
+    * so the same ancestors are compared again and again. Instead,
+    * each entry's own sort value can be ranked once and the
+    * hierarchy is then represented by the ranks of its levels. This
+    * isn't used with flatten (which doesn't need the hierarchy) or
+    * in debug mode (which shows each comparison).
+    */
+   protected boolean useHierarchySortKeys()
+   {
+      if (bib2gls.getCurrentResource().flattenSort()
+           || bib2gls.isDebuggingOn())
+      {
+         return false;
+      }
+
+      for (Bib2GlsEntry entry : entries)
+      {
+         if (entry.getHierarchyCount() > 1)
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   /**
+    * Ranks the entries according to their own sort values and sets
+    * each entry's hierarchy sort key to the list of ranks of its
+    * hierarchy. Entries that compare as equal (after applying
+    * the identical sort fallback) have the same rank. The
+    * hierarchy must have already been updated.
+    */
+   protected void setHierarchySortKeys()
+   {
+      final boolean reverse = settings.isReverse();
+
+      Comparator<Bib2GlsEntry> rankComparator = new Comparator<Bib2GlsEntry>()
+       {
+          public int compare(Bib2GlsEntry entry1, Bib2GlsEntry entry2)
+          {
+             if (entry1.equals(entry2))
+             {
+                return 0;
+             }
+
+             int result = compareElements(entry1, entry2);
+
+             if (result == 0)
+             {
+                result = getIdenticalSortFallback(entry1, entry2);
+             }
+
+             return reverse ? -result : result;
+          }
+       };
+
+      Vector<Bib2GlsEntry> ranked = new Vector<Bib2GlsEntry>(entries);
+
+      sort(ranked, rankComparator);
+
+      int rank = 0;
+      Bib2GlsEntry prev = null;
+
+      for (Bib2GlsEntry entry : ranked)
+      {
+         if (prev != null && rankComparator.compare(prev, entry) != 0)
+         {
+            rank++;
+         }
+
+         entry.setSortRank(rank);
+         prev = entry;
+      }
+
+      for (Bib2GlsEntry entry : entries)
+      {
+         int n = entry.getHierarchyCount();
+         int[] key = new int[n];
+
+         for (int i = 0; i < n; i++)
+         {
+            key[i] = entry.getHierarchyElement(i).getSortRank();
+         }
+
+         entry.setHierarchySortKey(key);
+      }
+   }
+
+   /**
+    * Compares the hierarchy sort keys. This is equivalent to
+    * compare(Bib2GlsEntry,Bib2GlsEntry) but only compares integers.
+    * An ancestor's key is a prefix of its descendants' keys, so
+    * ancestors always come first.
+    */
+   protected int compareHierarchySortKeys(Bib2GlsEntry entry1,
+     Bib2GlsEntry entry2)
+   {
+      int[] key1 = entry1.getHierarchySortKey();
+      int[] key2 = entry2.getHierarchySortKey();
+
+      int n = Integer.min(key1.length, key2.length);
+
+      for (int i = 0; i < n; i++)
+      {
+         if (key1[i] != key2[i])
+         {
+            return key1[i] < key2[i] ? -1 : 1;
+         }
+      }
+
+      return (key1.length == key2.length ? 0 
+               : (key1.length < key2.length ? -1 : 1));
    }
 
    protected String sortStorageField = "bib2gls@sort";
@@ -799,6 +1130,16 @@ public abstract class SortComparator implements Comparator<Bib2GlsEntry>
 
    private HashMap<String,Integer> sortCount;
 
+   private HashSet<String> identicalReported = null;
+
+   private boolean flatten = false;
+
+   // smaller lists aren't worth sorting in parallel
+   private static final int PARALLEL_SORT_THRESHOLD = 8192;
+
+   // minimum number of entries sorted by each parallel sort task
+   private static final int PARALLEL_SORT_BLOCK_SIZE = 2048;
+
    protected Bib2Gls bib2gls;
 
    protected Vector<Bib2GlsEntry> entries;
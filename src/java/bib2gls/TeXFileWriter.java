@@ -0,0 +1,322 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package com.dickimawbooks.bibgls.bib2gls;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writer used for the .glstex files. The characters are encoded
+ * into a byte buffer, which can be compared with the existing file
+ * and written out in one go through a file channel. The byte buffer
+ * may be reused for the next file (see {@link #getBuffer()}).
+ * As with OutputStreamWriter, malformed or unmappable characters
+ * are replaced.
+ */
+public class TeXFileWriter extends Writer
+{
+   public TeXFileWriter(Charset charset, ByteBuffer buffer)
+   {
+      super();
+
+      encoder = charset.newEncoder()
+         .onMalformedInput(CodingErrorAction.REPLACE)
+         .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+      if (buffer == null)
+      {
+         buffer = ByteBuffer.allocate(INITIAL_BYTE_BUFFER_SIZE);
+      }
+      else
+      {
+         buffer.clear();
+      }
+
+      byteBuffer = buffer;
+      charBuffer = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+   }
+
+   @Override
+   public void write(int c) throws IOException
+   {
+      ensureOpen();
+
+      if (!charBuffer.hasRemaining())
+      {
+         encodeChars(false);
+      }
+
+      charBuffer.put((char)c);
+   }
+
+   @Override
+   public void write(char[] cbuf, int off, int len) throws IOException
+   {
+      ensureOpen();
+
+      while (len > 0)
+      {
+         if (!charBuffer.hasRemaining())
+         {
+            encodeChars(false);
+         }
+
+         int n = Math.min(len, charBuffer.remaining());
+
+         charBuffer.put(cbuf, off, n);
+
+         off += n;
+         len -= n;
+      }
+   }
+
+   @Override
+   public void write(String str, int off, int len) throws IOException
+   {
+      ensureOpen();
+
+      while (len > 0)
+      {
+         if (!charBuffer.hasRemaining())
+         {
+            encodeChars(false);
+         }
+
+         int n = Math.min(len, charBuffer.remaining());
+
+         charBuffer.put(str, off, off+n);
+
+         off += n;
+         len -= n;
+      }
+   }
+
+   /**
+    * Encodes any pending characters. Nothing is written to file
+    * until {@link #writeTo(File)}.
+    */
+   @Override
+   public void flush() throws IOException
+   {
+      if (!closed)
+      {
+         encodeChars(false);
+      }
+   }
+
+   /**
+    * Encodes any remaining characters. Once closed, the content is
+    * available through {@link #writeTo(File)} and
+    * {@link #isContentOf(File)}.
+    */
+   @Override
+   public void close() throws IOException
+   {
+      if (closed)
+      {
+         return;
+      }
+
+      encodeChars(true);
+
+      while (encoder.flush(byteBuffer).isOverflow())
+      {
+         growByteBuffer();
+      }
+
+      closed = true;
+      charBuffer = null;
+   }
+
+   /**
+    * Gets the number of bytes of encoded content.
+    */
+   public int getLength()
+   {
+      return byteBuffer.position();
+   }
+
+   /**
+    * Determines whether the given file has exactly the same content
+    * as this writer. The writer should be closed first.
+    */
+   public boolean isContentOf(File file) throws IOException
+   {
+      int length = byteBuffer.position();
+
+      if (!file.exists() || file.length() != length)
+      {
+         return false;
+      }
+
+      FileChannel channel = null;
+
+      try
+      {
+         channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+         ByteBuffer content = byteBuffer.duplicate();
+         content.flip();
+
+         ByteBuffer in = ByteBuffer.allocate(
+           Math.min(Math.max(length, 1), COMPARE_BUFFER_SIZE));
+
+         while (content.hasRemaining())
+         {
+            in.clear();
+
+            if (channel.read(in) == -1)
+            {
+               return false;
+            }
+
+            in.flip();
+
+            int n = in.remaining();
+
+            ByteBuffer slice = content.slice();
+            slice.limit(Math.min(n, slice.remaining()));
+
+            if (slice.remaining() != n || !slice.equals(in))
+            {
+               return false;
+            }
+
+            content.position(content.position()+n);
+         }
+
+         return channel.read(ByteBuffer.allocate(1)) == -1;
+      }
+      finally
+      {
+         if (channel != null)
+         {
+            channel.close();
+         }
+      }
+   }
+
+   /**
+    * Writes the encoded content to the given file, replacing any
+    * existing content. The writer should be closed first.
+    */
+   public void writeTo(File file) throws IOException
+   {
+      FileChannel channel = null;
+
+      try
+      {
+         channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+
+         ByteBuffer content = byteBuffer.duplicate();
+         content.flip();
+
+         while (content.hasRemaining())
+         {
+            channel.write(content);
+         }
+      }
+      finally
+      {
+         if (channel != null)
+         {
+            channel.close();
+         }
+      }
+   }
+
+   /**
+    * Gets the byte buffer, which may have been reallocated if the
+    * original wasn't large enough. This may be passed to the
+    * constructor of a new writer to reuse it.
+    */
+   public ByteBuffer getBuffer()
+   {
+      return byteBuffer;
+   }
+
+   private void ensureOpen() throws IOException
+   {
+      if (closed)
+      {
+         throw new IOException("Stream closed");
+      }
+   }
+
+   /*
+    * Encodes the characters in the character buffer into the byte
+    * buffer. Any incomplete surrogate pair at the end is retained
+    * unless this is the end of the input.
+    */
+   private void encodeChars(boolean endOfInput) throws IOException
+   {
+      charBuffer.flip();
+
+      while (true)
+      {
+         CoderResult result = encoder.encode(charBuffer, byteBuffer,
+            endOfInput);
+
+         if (result.isOverflow())
+         {
+            growByteBuffer();
+         }
+         else if (result.isUnderflow())
+         {
+            break;
+         }
+         else
+         {
+            result.throwException();
+         }
+      }
+
+      charBuffer.compact();
+   }
+
+   private void growByteBuffer()
+   {
+      ByteBuffer buffer = ByteBuffer.allocate(2*byteBuffer.capacity());
+
+      byteBuffer.flip();
+      buffer.put(byteBuffer);
+
+      byteBuffer = buffer;
+   }
+
+   private CharsetEncoder encoder;
+   private ByteBuffer byteBuffer;
+   private CharBuffer charBuffer;
+   private boolean closed = false;
+
+   private static final int INITIAL_BYTE_BUFFER_SIZE = 65536;
+   private static final int CHAR_BUFFER_SIZE = 8192;
+   private static final int COMPARE_BUFFER_SIZE = 65536;
+}
@@ -0,0 +1,301 @@
+/*
+    Copyright (C) 2024-2025 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package com.dickimawbooks.bibgls.common;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Writer for the transcript that passes its content to the
+ * underlying writer on a background thread, so that writing a
+ * large number of messages doesn't hold up the main thread. The
+ * characters are collected into blocks, which are written in
+ * order. Only a limited number of blocks may be waiting to be
+ * written at any one time. Flushing or closing waits until all
+ * pending blocks have been written.
+ */
+public class AsyncTranscriptWriter extends Writer
+{
+   public AsyncTranscriptWriter(Writer out)
+   {
+      super();
+
+      this.out = out;
+      block = new char[BLOCK_SIZE];
+      available = new Semaphore(MAX_PENDING_BLOCKS);
+
+      executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+       {
+          @Override
+          public Thread newThread(Runnable r)
+          {
+             Thread thread = new Thread(r, "transcript");
+
+             // don't prevent the application from exiting
+             thread.setDaemon(true);
+
+             return thread;
+          }
+       });
+   }
+
+   @Override
+   public void write(int c) throws IOException
+   {
+      ensureOpen();
+
+      if (count == block.length)
+      {
+         submitBlock();
+      }
+
+      block[count++] = (char)c;
+   }
+
+   @Override
+   public void write(char[] cbuf, int off, int len) throws IOException
+   {
+      ensureOpen();
+
+      while (len > 0)
+      {
+         if (count == block.length)
+         {
+            submitBlock();
+         }
+
+         int n = Math.min(len, block.length-count);
+
+         System.arraycopy(cbuf, off, block, count, n);
+
+         count += n;
+         off += n;
+         len -= n;
+      }
+   }
+
+   @Override
+   public void write(String str, int off, int len) throws IOException
+   {
+      ensureOpen();
+
+      while (len > 0)
+      {
+         if (count == block.length)
+         {
+            submitBlock();
+         }
+
+         int n = Math.min(len, block.length-count);
+
+         str.getChars(off, off+n, block, count);
+
+         count += n;
+         off += n;
+         len -= n;
+      }
+   }
+
+   /**
+    * Writes any pending content to the underlying writer and
+    * flushes it.
+    */
+   @Override
+   public void flush() throws IOException
+   {
+      if (closed)
+      {
+         return;
+      }
+
+      submitBlock();
+
+      waitFor(submit(new Callable<Void>()
+       {
+          @Override
+          public Void call() throws IOException
+          {
+             out.flush();
+             return null;
+          }
+       }));
+   }
+
+   /**
+    * Writes any pending content to the underlying writer and
+    * closes it.
+    */
+   @Override
+   public void close() throws IOException
+   {
+      if (closed)
+      {
+         return;
+      }
+
+      try
+      {
+         submitBlock();
+
+         waitFor(submit(new Callable<Void>()
+          {
+             @Override
+             public Void call() throws IOException
+             {
+                out.close();
+                return null;
+             }
+          }));
+      }
+      finally
+      {
+         closed = true;
+         block = null;
+         executor.shutdown();
+      }
+   }
+
+   private void ensureOpen() throws IOException
+   {
+      if (closed)
+      {
+         throw new IOException("Stream closed");
+      }
+   }
+
+   /*
+    * Hands the current block over to the background thread and
+    * starts a new block.
+    */
+   private void submitBlock() throws IOException
+   {
+      if (count == 0)
+      {
+         return;
+      }
+
+      final char[] data = block;
+      final int length = count;
+
+      submit(new Callable<Void>()
+       {
+          @Override
+          public Void call() throws IOException
+          {
+             out.write(data, 0, length);
+             return null;
+          }
+       });
+
+      block = new char[BLOCK_SIZE];
+      count = 0;
+   }
+
+   /*
+    * Queues the task, waiting if too many blocks are already
+    * pending. Any error from an earlier task is thrown here, and
+    * no further tasks are performed after an error.
+    */
+   private Future<Void> submit(final Callable<Void> task) throws IOException
+   {
+      if (error != null)
+      {
+         throw error;
+      }
+
+      try
+      {
+         available.acquire();
+      }
+      catch (InterruptedException e)
+      {
+         throw new IOException(e);
+      }
+
+      return executor.submit(new Callable<Void>()
+       {
+          @Override
+          public Void call() throws IOException
+          {
+             try
+             {
+                if (error == null)
+                {
+                   task.call();
+                }
+             }
+             catch (IOException e)
+             {
+                error = e;
+             }
+             catch (Exception e)
+             {
+                error = new IOException(e);
+             }
+             finally
+             {
+                available.release();
+             }
+
+             return null;
+          }
+       });
+   }
+
+   private void waitFor(Future<Void> future) throws IOException
+   {
+      try
+      {
+         future.get();
+      }
+      catch (InterruptedException e)
+      {
+         throw new IOException(e);
+      }
+      catch (ExecutionException e)
+      {
+         throw new IOException(e.getCause());
+      }
+
+      if (error != null)
+      {
+         throw error;
+      }
+   }
+
+   private Writer out;
+   private ExecutorService executor;
+   private Semaphore available;
+
+   private char[] block;
+   private int count = 0;
+   private boolean closed = false;
+
+   private volatile IOException error = null;
+
+   private static final int BLOCK_SIZE = 65536;
+   private static final int MAX_PENDING_BLOCKS = 16;
+}
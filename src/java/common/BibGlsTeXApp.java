@@ -142,6 +142,15 @@ public abstract class BibGlsTeXApp extends AbstractTeXApp
       return verboseLevel;
    }  
 
+   /**
+    * Determines whether or not messages are currently being written
+    * to the transcript.
+    */
+   public boolean isTranscriptOn()
+   {
+      return logWriter != null;
+   }
+
    public void logMessageNoLn(String msg)
    {
       if (logWriter != null)
@@ -190,8 +199,9 @@ public abstract class BibGlsTeXApp extends AbstractTeXApp
       {
          try
          {
-            logWriter = new PrintWriter(createBufferedWriter(transcriptFile.toPath(),
-              getDefaultCharset()));
+            logWriter = new PrintWriter(new AsyncTranscriptWriter(
+              createBufferedWriter(transcriptFile.toPath(),
+              getDefaultCharset())));
          }
          catch (IOException e)
          {
@@ -279,6 +289,37 @@ public abstract class BibGlsTeXApp extends AbstractTeXApp
       }
    }
 
+   /*
+    * The fixed-arity forms of debugMessage and verboseMessage avoid
+    * creating the varargs array when the message isn't needed, as
+    * they may be used in loops.
+    */
+
+   public void debugMessage(String key, Object param)
+   {
+      if (isDebuggingOn())
+      {
+         logAndPrintMessage(getSingleParamMessage(key, param));
+      }
+   }
+
+   public void debugMessage(String key, Object param1, Object param2)
+   {
+      if (isDebuggingOn())
+      {
+         logAndPrintMessage(getMessage(key, param1, param2));
+      }
+   }
+
+   public void debugMessage(String key, Object param1, Object param2,
+     Object param3)
+   {
+      if (isDebuggingOn())
+      {
+         logAndPrintMessage(getMessage(key, param1, param2, param3));
+      }
+   }
+
    /*
     *  TeXApp method. This is used by the TeX parser library
     *  when substituting deprecated commands.
@@ -701,7 +742,40 @@ public abstract class BibGlsTeXApp extends AbstractTeXApp
 
    public void verboseMessage(String key, Object... params)
    {
-      verbose(getMessage(key, params));
+      if (isVerbose() || isTranscriptOn())
+      {
+         verbose(getMessage(key, params));
+      }
+   }
+
+   public void verboseMessage(String key, Object param)
+   {
+      if (isVerbose() || isTranscriptOn())
+      {
+         verbose(getSingleParamMessage(key, param));
+      }
+   }
+
+   /*
+    * An array passed as the only parameter would have been used as
+    * the varargs array.
+    */
+   private String getSingleParamMessage(String key, Object param)
+   {
+      if (param instanceof Object[])
+      {
+         return getMessage(key, (Object[])param);
+      }
+
+      return getMessage(key, new Object[] {param});
+   }
+
+   public void verboseMessage(String key, Object param1, Object param2)
+   {
+      if (isVerbose() || isTranscriptOn())
+      {
+         verbose(getMessage(key, param1, param2));
+      }
    }
 
    public void verbose(String text)